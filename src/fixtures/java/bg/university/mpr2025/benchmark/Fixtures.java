@@ -0,0 +1,44 @@
+package bg.university.mpr2025.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Saved HTML pages the microbenchmarks run on, so results never depend on the network.
+ * "small" and "medium" are stored as resources; "large" is the medium page with its
+ * article list repeated until the page is about 2 MB, the size of a long news front page.
+ */
+final class Fixtures {
+    static final String BASE_URL = "https://news.example.com/";
+
+    private static final String RIVER_START = "<div class=\"river river--homepage\">";
+    private static final String RIVER_END = "    </div>\n    <div class=\"pagination\">";
+    private static final int LARGE_REPEATS = 100;
+
+    private Fixtures() {
+    }
+
+    static String load(String name) {
+        if ("large".equals(name)) {
+            return large();
+        }
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name + ".html")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown fixture: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String large() {
+        String medium = load("medium");
+        int start = medium.indexOf(RIVER_START) + RIVER_START.length();
+        int end = medium.indexOf(RIVER_END, start);
+        String river = medium.substring(start, end);
+        return medium.substring(0, start) + river.repeat(LARGE_REPEATS) + medium.substring(end);
+    }
+}
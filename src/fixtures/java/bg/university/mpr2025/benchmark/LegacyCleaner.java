@@ -0,0 +1,46 @@
+package bg.university.mpr2025.benchmark;
+
+import org.jsoup.nodes.Document;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The select-per-rule cleaning ParallelScraper used before DocumentCleaner, kept verbatim
+ * as the reference the single-pass cleaner is measured and checked against.
+ */
+final class LegacyCleaner {
+    private static final Set<String> IGNORED_ELEMENTS = new HashSet<>(Arrays.asList(
+        "script", "style", "noscript", "iframe", "object", "embed",
+        "nav", "footer", "header", "aside", "form", "button"
+    ));
+
+    private static final Set<String> IGNORED_CLASSES = new HashSet<>(Arrays.asList(
+        "menu", "advertisement", "social", "share", "related", "popular", "trending",
+        "newsletter", "subscribe", "cookie", "privacy", "modal", "overlay", "banner"
+    ));
+
+    private LegacyCleaner() {
+    }
+
+    static void clean(Document doc) {
+        // Remove script and style elements
+        for (String tag : IGNORED_ELEMENTS) {
+            doc.select(tag).remove();
+        }
+
+        // Remove elements with ignored classes or IDs
+        for (String cls : IGNORED_CLASSES) {
+            doc.select("." + cls).remove();
+            doc.select("#" + cls).remove();
+            doc.select("[class*=" + cls + "]").remove();
+        }
+
+        // Remove common non-content elements
+        doc.select("header, footer, nav, aside, form, button, input, textarea, select, iframe").remove();
+
+        // Remove empty elements
+        doc.select(":empty").remove();
+    }
+}
@@ -0,0 +1,43 @@
+package bg.university.mpr2025.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Entry point of benchmarks.jar. It takes the usual JMH command line but always runs the GC
+ * profiler, so every result comes with the bytes allocated per operation and the collections
+ * it caused next to its time.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(options);
+        if (!hasGcProfiler(options)) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        new Runner(builder.build()).run();
+    }
+
+    private static boolean hasGcProfiler(CommandLineOptions options) {
+        for (ProfilerConfig profiler : options.getProfilers()) {
+            String name = profiler.getKlass();
+            if ("gc".equals(name) || GCProfiler.class.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
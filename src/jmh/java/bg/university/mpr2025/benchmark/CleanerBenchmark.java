@@ -0,0 +1,63 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.scrapper.DocumentCleaner;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-pass DocumentCleaner against the select-per-rule LegacyCleaner.
+ * Cleaning mutates the page, so every invocation cleans a fresh clone; {@link #cloneOnly}
+ * measures that clone on its own. CleanerEquivalenceTest checks that both give the same page.
+ * Run with: mvn -P jmh package && java -jar target/benchmarks.jar CleanerBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CleanerBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String fixture;
+
+    private Document page;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        page = Jsoup.parse(Fixtures.load(fixture), Fixtures.BASE_URL);
+    }
+
+    @Benchmark
+    public Document cloneOnly() {
+        return page.clone();
+    }
+
+    @Benchmark
+    public Document legacy() {
+        Document doc = page.clone();
+        LegacyCleaner.clean(doc);
+        return doc;
+    }
+
+    @Benchmark
+    public Document singlePass() {
+        Document doc = page.clone();
+        DocumentCleaner.standard().clean(doc);
+        return doc;
+    }
+}
@@ -0,0 +1,121 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.models.ScrapeCodec;
+import bg.university.mpr2025.models.ScrapeRequest;
+import bg.university.mpr2025.models.ScrapeResult;
+import bg.university.mpr2025.utils.BufferPool;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wire format cost per message: the Gson path the servers used before (String JSON,
+ * then UTF-8 bytes, then a wrapped buffer) against ScrapeCodec writing into pooled buffers.
+ * Run with: mvn -P jmh package && java -jar target/benchmarks.jar CodecBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @State(Scope.Thread)
+    public static class ResultState {
+        @Param({"10", "1000"})
+        public int rows;
+
+        final Gson gson = new Gson();
+        final ScrapeCodec codec = new ScrapeCodec(BufferPool.shared());
+        ScrapeResult result;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            List<String> results = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                results.add("Startup number " + i + " raises a \"seed\" round \u2013 backed by caf\u00e9 investors");
+            }
+            result = new ScrapeResult();
+            result.setId("42");
+            result.setStatus("success");
+            result.setProcessingTimeMs(187);
+            result.setResults(results);
+
+            // Both paths must put the same JSON on the wire
+            String expected = new GsonBuilder().disableHtmlEscaping().create().toJson(result) + "\n";
+            List<ByteBuffer> encoded = codec.encode(result);
+            StringBuilder actual = new StringBuilder();
+            for (ByteBuffer buffer : encoded) {
+                actual.append(StandardCharsets.UTF_8.decode(buffer.duplicate()));
+            }
+            codec.release(encoded);
+            if (!expected.contentEquals(actual)) {
+                throw new IllegalStateException("ScrapeCodec output differs from Gson:\n" + actual + expected);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RequestState {
+        final Gson gson = new Gson();
+        final ScrapeCodec codec = new ScrapeCodec(BufferPool.shared());
+        ByteBuffer frame;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            byte[] json = "{\"url\":\"https://techcrunch.com/category/startups/\",\"threads\":4,\"rows\":10,\"id\":\"17\",\"keepAlive\":true,\"stream\":false}"
+                    .getBytes(StandardCharsets.UTF_8);
+            frame = ByteBuffer.allocateDirect(json.length);
+            frame.put(json).flip();
+
+            ScrapeRequest expected = gson.fromJson(new String(json, StandardCharsets.UTF_8), ScrapeRequest.class);
+            if (!gson.toJson(expected).equals(gson.toJson(codec.decodeRequest(frame.duplicate())))) {
+                throw new IllegalStateException("ScrapeCodec decodes the request differently from Gson");
+            }
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer encodeGson(ResultState state) {
+        String json = state.gson.toJson(state.result) + "\n";
+        return ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void encodeCodec(ResultState state, Blackhole blackhole) {
+        List<ByteBuffer> encoded = state.codec.encode(state.result);
+        blackhole.consume(encoded);
+        state.codec.release(encoded);
+    }
+
+    @Benchmark
+    public ScrapeRequest decodeGson(RequestState state) {
+        ByteBuffer frame = state.frame.duplicate();
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        return state.gson.fromJson(new String(bytes, StandardCharsets.UTF_8), ScrapeRequest.class);
+    }
+
+    @Benchmark
+    public ScrapeRequest decodeCodec(RequestState state) {
+        return state.codec.decodeRequest(state.frame.duplicate());
+    }
+}
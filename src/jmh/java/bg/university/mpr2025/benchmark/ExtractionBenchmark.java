@@ -0,0 +1,125 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.scrapper.ExtractionProfile;
+import bg.university.mpr2025.scrapper.ParallelExtractor;
+import bg.university.mpr2025.scrapper.ParallelScraper;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU path of a scrape after the download, stage by stage and as a whole: selecting the
+ * content elements of a cleaned page, turning them into rows with ParallelExtractor at 1 to 8
+ * threads, and parsing, cleaning and extracting a page from its HTML as ParallelScraper does.
+ * Setup fails if any thread count returns other rows than one thread.
+ * Run with: mvn -P jmh package && java -jar target/benchmarks.jar ExtractionBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @State(Scope.Thread)
+    public static class PageState {
+        @Param({"small", "medium", "large"})
+        public String fixture;
+
+        final ExtractionProfile profile = ExtractionProfile.standard();
+        final List<Evaluator> evaluators = new ArrayList<>();
+        String html;
+        Document cleaned;
+        Elements elements;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            html = Fixtures.load(fixture);
+            cleaned = Jsoup.parse(html, Fixtures.BASE_URL);
+            profile.getCleaner().clean(cleaned);
+            // Compiled once, as ExtractionProfile does
+            for (String selector : profile.getSelectors()) {
+                evaluators.add(QueryParser.parse(selector));
+            }
+            elements = selectElements(this);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadsState {
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        @Param({"10", "0"})
+        public int rows;
+
+        final ParallelScraper scraper = new ParallelScraper();
+
+        @Setup(Level.Trial)
+        public void setUp(PageState page) throws Exception {
+            List<String> expected = new ArrayList<>();
+            ParallelExtractor.shared().extract(page.elements, page.profile.getFilter()::rowOf, 1, rows, expected::add);
+            if (!expected.equals(extractRows(page, this)) || !expected.equals(scrapeRows(page, this))) {
+                throw new IllegalStateException("Rows at " + threads + " threads differ from one thread on " + page.fixture);
+            }
+        }
+    }
+
+    @Benchmark
+    public Elements select(PageState page) {
+        return selectElements(page);
+    }
+
+    @Benchmark
+    public List<String> extract(PageState page, ThreadsState state) throws Exception {
+        return extractRows(page, state);
+    }
+
+    @Benchmark
+    public List<String> scrape(PageState page, ThreadsState state) throws Exception {
+        return scrapeRows(page, state);
+    }
+
+    private static Elements selectElements(PageState page) {
+        Elements elements = new Elements();
+        for (Evaluator evaluator : page.evaluators) {
+            elements.addAll(page.cleaned.select(evaluator));
+        }
+        return elements;
+    }
+
+    private static List<String> extractRows(PageState page, ThreadsState state) throws Exception {
+        List<String> results = new ArrayList<>();
+        ParallelExtractor.shared().extract(page.elements, page.profile.getFilter()::rowOf, state.threads, state.rows,
+                results::add);
+        return results;
+    }
+
+    /**
+     * Parses, cleans and extracts the page from its HTML
+     */
+    private static List<String> scrapeRows(PageState page, ThreadsState state) throws Exception {
+        Document doc = Jsoup.parse(page.html, Fixtures.BASE_URL);
+        List<String> results = new ArrayList<>();
+        state.scraper.scrape(doc, page.profile, state.threads, state.rows, results::add);
+        return results;
+    }
+}
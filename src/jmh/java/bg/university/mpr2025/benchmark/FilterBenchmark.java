@@ -0,0 +1,131 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.scrapper.ElementFilter;
+import bg.university.mpr2025.scrapper.ExtractionProfile;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-element filtering: the scraper's original processElement, which builds, trims and
+ * lower-cases strings for every element, against ElementFilter, which rejects most elements
+ * without allocating. "content" runs on the elements the selectors match, "all" on every
+ * element of the page and "rejected" on those of them that do not make a row, where every
+ * string the original builds is garbage. Setup fails if the two disagree on any element.
+ * Run with: mvn -P jmh package && java -jar target/benchmarks.jar FilterBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterBenchmark {
+
+    @Param({"medium", "large"})
+    public String fixture;
+
+    @Param({"content", "all", "rejected"})
+    public String elementSet;
+
+    private Elements elements;
+    private final ElementFilter filter = ElementFilter.standard();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ExtractionProfile profile = ExtractionProfile.standard();
+        Document page = Jsoup.parse(Fixtures.load(fixture), Fixtures.BASE_URL);
+        profile.getCleaner().clean(page);
+        if ("all".equals(elementSet)) {
+            elements = page.getAllElements();
+        } else if ("rejected".equals(elementSet)) {
+            elements = new Elements();
+            for (Element element : page.getAllElements()) {
+                if (legacy(element) == null) {
+                    elements.add(element);
+                }
+            }
+        } else {
+            elements = new Elements();
+            for (String selector : profile.getSelectors()) {
+                elements.addAll(page.select(selector));
+            }
+        }
+
+        for (Element element : elements) {
+            if (!Objects.equals(legacy(element), filter.rowOf(element))) {
+                throw new IllegalStateException("ElementFilter disagrees with processElement on " + element.cssSelector());
+            }
+        }
+    }
+
+    @Benchmark
+    public void processElement(Blackhole blackhole) {
+        for (Element element : elements) {
+            blackhole.consume(legacy(element));
+        }
+    }
+
+    @Benchmark
+    public void elementFilter(Blackhole blackhole) {
+        for (Element element : elements) {
+            blackhole.consume(filter.rowOf(element));
+        }
+    }
+
+    /**
+     * ParallelScraper.processElement and isUnwantedElement before ElementFilter, kept verbatim
+     */
+    private static String legacy(Element element) {
+        if (element == null) {
+            return null;
+        }
+
+        // Skip elements with no text or very short text
+        String text = element.text().trim();
+        if (text.isEmpty() || text.length() < 10) {
+            return null;
+        }
+
+        // Skip elements that are likely navigation or metadata
+        String className = element.className().toLowerCase();
+        String id = element.id().toLowerCase();
+
+        if (isUnwantedElement(className, id, element.tagName())) {
+            return null;
+        }
+
+        return text;
+    }
+
+    private static boolean isUnwantedElement(String className, String id, String tagName) {
+        // Skip common navigation and footer elements
+        if (className.contains("navi") || className.contains("footer") ||
+            className.contains("header") || className.contains("menu") ||
+            id.contains("navi") || id.contains("footer") ||
+            id.contains("header") || id.contains("menu")) {
+            return true;
+        }
+
+        // Skip common metadata tags
+        return "meta".equals(tagName) || "link".equals(tagName) || "script".equals(tagName) ||
+               "style".equals(tagName) || "noscript".equals(tagName);
+    }
+}
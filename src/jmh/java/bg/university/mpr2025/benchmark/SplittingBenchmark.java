@@ -0,0 +1,170 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.scrapper.ExtractionProfile;
+import bg.university.mpr2025.scrapper.ParallelExtractor;
+import bg.university.mpr2025.scrapper.ScraperExecutor;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the content elements of a page are spread over threads: one future per element on a
+ * fresh fixed pool (the original scraper), one chunk per requested thread on the shared pool,
+ * and ParallelExtractor's leaves sized from the measured cost per element.
+ * All three run the same per-element work and must return the same rows.
+ * Run with: mvn -P jmh package && java -jar target/benchmarks.jar SplittingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SplittingBenchmark {
+
+    @Param({"medium", "large"})
+    public String fixture;
+
+    @Param({"10", "0"})
+    public int rows;
+
+    @Param({"4"})
+    public int threads;
+
+    private Elements elements;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ExtractionProfile profile = ExtractionProfile.standard();
+        Document page = Jsoup.parse(Fixtures.load(fixture), Fixtures.BASE_URL);
+        profile.getCleaner().clean(page);
+        elements = new Elements();
+        for (String selector : profile.getSelectors()) {
+            elements.addAll(page.select(selector));
+        }
+
+        List<String> expected = perElementFutures();
+        if (!expected.equals(fixedChunks()) || !expected.equals(adaptive())) {
+            throw new IllegalStateException("Splitting strategies disagree on " + fixture);
+        }
+    }
+
+    @Benchmark
+    public List<String> perElementFutures() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, elements.size()), r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (Element element : elements) {
+                futures.add(executor.submit(() -> row(element)));
+            }
+            List<String> results = new ArrayList<>();
+            for (Future<String> future : futures) {
+                String result = future.get();
+                if (result != null) {
+                    results.add(result);
+                    if (rows > 0 && results.size() >= rows) {
+                        break;
+                    }
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public List<String> fixedChunks() throws Exception {
+        int chunks = Math.max(1, Math.min(Math.min(threads, ScraperExecutor.pool().getParallelism()), elements.size()));
+        int chunkSize = (elements.size() + chunks - 1) / chunks;
+        List<Future<List<String>>> futures = new ArrayList<>(chunks);
+        for (int from = 0; from < elements.size(); from += chunkSize) {
+            int start = from;
+            int end = Math.min(from + chunkSize, elements.size());
+            futures.add(ScraperExecutor.pool().submit(() -> {
+                List<String> chunk = new ArrayList<>();
+                for (int i = start; i < end; i++) {
+                    String result = row(elements.get(i));
+                    if (result != null) {
+                        chunk.add(result);
+                        if (rows > 0 && chunk.size() >= rows) {
+                            break;
+                        }
+                    }
+                }
+                return chunk;
+            }));
+        }
+        try {
+            List<String> results = new ArrayList<>();
+            for (Future<List<String>> future : futures) {
+                for (String result : future.get()) {
+                    if (rows > 0 && results.size() >= rows) {
+                        return results;
+                    }
+                    results.add(result);
+                }
+            }
+            return results;
+        } finally {
+            for (Future<List<String>> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<String> adaptive() throws Exception {
+        List<String> results = new ArrayList<>();
+        ParallelExtractor.shared().extract(elements, SplittingBenchmark::row, threads, rows, results::add);
+        return results;
+    }
+
+    /**
+     * The scraper's per-element work: the element's text, unless it is short or looks like navigation
+     */
+    private static String row(Element element) {
+        String text = element.text().trim();
+        if (text.length() < 10) {
+            return null;
+        }
+        String className = element.className().toLowerCase();
+        String id = element.id().toLowerCase();
+        if (className.contains("navi") || className.contains("footer")
+                || className.contains("header") || className.contains("menu")
+                || id.contains("navi") || id.contains("footer")
+                || id.contains("header") || id.contains("menu")) {
+            return null;
+        }
+        String tagName = element.tagName();
+        if ("meta".equals(tagName) || "link".equals(tagName) || "script".equals(tagName)
+                || "style".equals(tagName) || "noscript".equals(tagName)) {
+            return null;
+        }
+        return text;
+    }
+}
@@ -1,6 +1,10 @@
 package bg.university.mpr2025;
 
+import bg.university.mpr2025.server.ScrapeServer;
+import bg.university.mpr2025.server.SelectorServer;
 import bg.university.mpr2025.server.Server;
+import bg.university.mpr2025.server.ThreadPoolServer;
+import bg.university.mpr2025.server.VirtualThreadServer;
 import bg.university.mpr2025.client.Client;
 import bg.university.mpr2025.scrapper.ParallelScraper;
 
@@ -10,8 +14,8 @@ import java.util.Scanner;
 public class Main {
     public static void main(String[] args) throws Exception {
         if (args.length == 0) {
-            System.out.println("Usage: java -jar <jar> [server|client|scraper]");
-            System.out.println("  server - Start the server");
+            System.out.println("Usage: java -jar <jar> [server [basic|threadpool|selector [eventLoops]|virtual]|client|scraper]");
+            System.out.println("  server - Start the server (default engine: basic)");
             System.out.println("  client - Start the client");
             System.out.println("  scraper - Run the web scraper example");
             return;
@@ -19,7 +23,8 @@ public class Main {
         
         switch (args[0].toLowerCase()) {
             case "server":
-                startServer();
+                startServer(args.length > 1 ? args[1].toLowerCase() : "basic",
+                        args.length > 2 ? Integer.parseInt(args[2]) : 1);
                 break;
             case "client":
                 startClient();
@@ -32,9 +37,26 @@ public class Main {
         }
     }
     
-    private static void startServer() throws Exception {
-        System.out.println("Starting server on port 5555...");
-        Server server = new Server(5555);
+    private static void startServer(String engine, int eventLoops) throws Exception {
+        ScrapeServer server;
+        switch (engine) {
+            case "basic":
+                server = new Server(5555);
+                break;
+            case "threadpool":
+                server = new ThreadPoolServer(5555, 16);
+                break;
+            case "selector":
+                server = new SelectorServer(5555, 16, eventLoops);
+                break;
+            case "virtual":
+                server = new VirtualThreadServer(5555);
+                break;
+            default:
+                System.out.println("Unknown server engine. Use 'basic', 'threadpool', 'selector' or 'virtual'.");
+                return;
+        }
+        System.out.println("Starting " + engine + " server on port 5555...");
         server.start();
     }
     
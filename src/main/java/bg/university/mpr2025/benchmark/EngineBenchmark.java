@@ -0,0 +1,187 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.server.ScrapeServer;
+import bg.university.mpr2025.server.SelectorServer;
+import bg.university.mpr2025.server.Server;
+import bg.university.mpr2025.server.ThreadPoolServer;
+import bg.university.mpr2025.server.VirtualThreadServer;
+
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Side-by-side comparison of ThreadPoolServer, SelectorServer and VirtualThreadServer
+ * when every scrape waits on a slow upstream site.
+ * Each client sends one request for a distinct URL, so neither the page cache nor
+ * request coalescing hides the upstream latency. Requests the server answers busy are
+ * counted apart from errors.
+ */
+public class EngineBenchmark {
+    private static final String HOST = "localhost";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: EngineBenchmark <output.csv> [clients] [upstreamLatencyMs] [workerThreads]");
+            return;
+        }
+
+        String csv = args[0];
+        int clients = args.length >= 2 ? Integer.parseInt(args[1]) : 200;
+        int latencyMs = args.length >= 3 ? Integer.parseInt(args[2]) : 200;
+        int workers = args.length >= 4 ? Integer.parseInt(args[3]) : 16;
+        // The stub origin is a single host, whose fetch cap would otherwise be measured instead of the engines
+        if (System.getProperty("scraper.fetch.maxPerHost") == null) {
+            System.setProperty("scraper.fetch.maxPerHost", String.valueOf(Math.max(1, clients)));
+        }
+
+        try (StubOrigin origin = new StubOrigin(latencyMs);
+             PrintWriter out = new PrintWriter(new FileWriter(csv))) {
+            origin.page("/news", StubOrigin.newsPage(20));
+
+            out.println("engine,clients,upstreamLatencyMs,timeMs,throughputRps,p50Ms,p99Ms,errors,busy");
+
+            String[] engines = {"threadpool", "selector", "virtual"};
+            for (String engine : engines) {
+                int port = freePort();
+                ScrapeServer server = createServer(engine, port, workers);
+                startServer(server, port);
+                try {
+                    long[] latencies = new long[clients];
+                    AtomicInteger busy = new AtomicInteger();
+                    long start = System.currentTimeMillis();
+                    int errors = runClients(port, origin.url("/news?engine=" + engine + "&client="), latencies, busy);
+                    long ms = System.currentTimeMillis() - start;
+
+                    Arrays.sort(latencies);
+                    long rps = ms > 0 ? clients * 1000L / ms : clients;
+                    out.println(engine + "," + clients + "," + latencyMs + "," + ms + "," + rps + ","
+                            + percentile(latencies, 50) + "," + percentile(latencies, 99) + "," + errors + "," + busy.get());
+                    System.out.println(engine + " clients=" + clients + " time=" + ms + "ms p50="
+                            + percentile(latencies, 50) + "ms p99=" + percentile(latencies, 99) + "ms errors=" + errors
+                            + " busy=" + busy.get());
+                } finally {
+                    server.stop();
+                }
+            }
+        }
+    }
+
+    static ScrapeServer createServer(String engine, int port, int workers) {
+        switch (engine) {
+            case "basic":
+                return new Server(port);
+            case "threadpool":
+                return new ThreadPoolServer(port, workers);
+            case "selector":
+                return new SelectorServer(port, workers);
+            case "virtual":
+                return new VirtualThreadServer(port);
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+    }
+
+    /**
+     * Starts the server on a daemon thread and waits until it accepts connections
+     */
+    static void startServer(ScrapeServer server, int port) throws InterruptedException {
+        Thread thread = new Thread(server::start, "benchmark-server");
+        thread.setDaemon(true);
+        thread.start();
+
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                new Socket(HOST, port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Sends one request and waits for the response line
+     * @return The response, or null if the server closed the connection without answering
+     */
+    static String request(int port, String json) throws IOException {
+        try (Socket socket = new Socket(HOST, port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write((json + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            return in.readLine();
+        }
+    }
+
+    static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * @param busy Counts the requests answered busy, which are not errors
+     * @return Number of requests that failed
+     */
+    private static int runClients(int port, String urlPrefix, long[] latencies, AtomicInteger busy) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(latencies.length);
+        CountDownLatch go = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < latencies.length; i++) {
+                int client = i;
+                futures.add(executor.submit(() -> {
+                    go.await();
+                    long start = System.currentTimeMillis();
+                    try {
+                        String response = request(port, "{\"url\":\"" + urlPrefix + client + "\",\"threads\":1,\"rows\":5}");
+                        if (response != null && response.contains("\"status\":\"busy\"")) {
+                            busy.incrementAndGet();
+                            return true;
+                        }
+                        return response != null && response.contains("\"status\":\"success\"");
+                    } catch (IOException e) {
+                        return false;
+                    } finally {
+                        latencies[client] = System.currentTimeMillis() - start;
+                    }
+                }));
+            }
+
+            go.countDown();
+            int errors = 0;
+            for (Future<Boolean> future : futures) {
+                if (!future.get()) {
+                    errors++;
+                }
+            }
+            return errors;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.scrapper.HttpFetcher;
+import org.jsoup.Jsoup;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares per-call {@code Jsoup.connect} fetching and a fresh, unpooled client per
+ * fetch with the shared, pooled {@link HttpFetcher} against a local {@link StubOrigin}.
+ */
+public class FetchBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: FetchBenchmark <output.csv> [requests] [concurrency]");
+            return;
+        }
+
+        String csv = args[0];
+        int requests = args.length >= 2 ? Integer.parseInt(args[1]) : 500;
+        int concurrency = args.length >= 3 ? Integer.parseInt(args[2]) : 8;
+
+        try (StubOrigin origin = new StubOrigin(0);
+             PrintWriter out = new PrintWriter(new FileWriter(csv))) {
+            origin.page("/news", StubOrigin.newsPage(50));
+            String url = origin.url("/news");
+            HttpFetcher fetcher = new HttpFetcher();
+
+            out.println("fetcher,requests,concurrency,timeMs,connections");
+
+            for (int c = 1; c <= concurrency; c *= 2) {
+                // Warm up both paths so class loading and JIT do not skew the first run
+                run(() -> Jsoup.connect(url).get(), 50, c);
+                run(() -> fetcher.fetchDocument(url), 50, c);
+
+                origin.reset();
+                long ms = run(() -> Jsoup.connect(url).get(), requests, c);
+                report(out, "jsoup-connect", requests, c, ms, origin.connectionCount());
+
+                origin.reset();
+                ms = run(() -> new HttpFetcher().fetchDocument(url), requests, c);
+                report(out, "http-fetcher-unpooled", requests, c, ms, origin.connectionCount());
+
+                origin.reset();
+                ms = run(() -> fetcher.fetchDocument(url), requests, c);
+                report(out, "http-fetcher", requests, c, ms, origin.connectionCount());
+            }
+        }
+    }
+
+    private static long run(Fetch fetch, int requests, int concurrency) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            long start = System.currentTimeMillis();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                futures.add(executor.submit(() -> {
+                    fetch.run();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.currentTimeMillis() - start;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void report(PrintWriter out, String name, int requests, int concurrency, long ms, int connections) {
+        out.println(name + "," + requests + "," + concurrency + "," + ms + "," + connections);
+        System.out.println(name + " concurrency=" + concurrency + " time=" + ms + "ms connections=" + connections);
+    }
+
+    private interface Fetch {
+        void run() throws Exception;
+    }
+}
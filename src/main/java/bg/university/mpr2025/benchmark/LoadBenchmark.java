@@ -0,0 +1,237 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.models.ScrapeResult;
+import bg.university.mpr2025.server.AdmissionController;
+import bg.university.mpr2025.server.ScrapeServer;
+import bg.university.mpr2025.utils.LatencyHistogram;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of the server engines against a local stub origin.
+ * Every engine is driven at 1, 2, 4 ... {@code maxClients} clients, first closed-loop, where
+ * each client sends its next request as soon as the previous one is answered, then open-loop,
+ * where requests arrive at {@code ratePerClient} per second per client whether or not earlier
+ * ones were answered. Open-loop latencies count from when a request was due, so a server that
+ * falls behind cannot hide it by slowing the clients down.
+ * Each request opens a connection and asks for a distinct URL, so every one waits on the origin.
+ * The rows extend those of {@link Benchmark}: {@code threads} is the scrape threads per request,
+ * {@code timeMs} the length of the run and {@code rows} the fewest rows of a successful answer;
+ * {@code offeredRps} is the open-loop arrival rate, 0 for closed-loop runs.
+ * Throughput and latencies cover successful answers; busy answers and failures are counted apart.
+ * The engines share one admission controller per process, so run a single engine to keep its
+ * numbers clear of what the controller learnt from the engines before it.
+ */
+public class LoadBenchmark {
+    private static final String HOST = "localhost";
+    private static final int READ_TIMEOUT_MS = 30_000;
+    private static final int WARMUP_REQUESTS = 50;
+
+    private static final Gson GSON = new Gson();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: LoadBenchmark <output.csv> [engines] [maxClients] [durationSec]"
+                    + " [upstreamLatencyMs] [ratePerClient] [threads] [rows]");
+            return;
+        }
+
+        String csv = args[0];
+        String[] engines = (args.length >= 2 ? args[1] : "basic,threadpool,selector").split(",");
+        int maxClients = args.length >= 3 ? Integer.parseInt(args[2]) : 32;
+        int durationSec = args.length >= 4 ? Integer.parseInt(args[3]) : 10;
+        int latencyMs = args.length >= 5 ? Integer.parseInt(args[4]) : 100;
+        double ratePerClient = args.length >= 6 ? Double.parseDouble(args[5]) : 5;
+        int threads = args.length >= 7 ? Integer.parseInt(args[6]) : 2;
+        int rows = args.length >= 8 ? Integer.parseInt(args[7]) : 10;
+        // The stub origin is a single host, whose fetch cap would otherwise be measured instead of the engines
+        if (System.getProperty("scraper.fetch.maxPerHost") == null) {
+            System.setProperty("scraper.fetch.maxPerHost", "1024");
+        }
+
+        try (StubOrigin origin = new StubOrigin(latencyMs);
+             PrintWriter out = new PrintWriter(new FileWriter(csv))) {
+            origin.page("/news", StubOrigin.newsPage(20));
+
+            out.println("engine,mode,clients,offeredRps,threads,timeMs,rows,requests,throughputRps,"
+                    + "p50Ms,p90Ms,p99Ms,p999Ms,maxMs,busy,errors");
+
+            for (String engine : engines) {
+                int port = EngineBenchmark.freePort();
+                ScrapeServer server = EngineBenchmark.createServer(engine.trim(), port, 16);
+                EngineBenchmark.startServer(server, port);
+                try {
+                    Load load = new Load(port, origin.url("/news?engine=" + engine.trim() + "&seq="), threads, rows);
+                    // Warm up the JIT of both sides before measuring
+                    for (int i = 0; i < WARMUP_REQUESTS; i++) {
+                        load.send(System.nanoTime(), new Run());
+                    }
+
+                    for (int clients = 1; clients <= maxClients; clients *= 2) {
+                        Run closed = load.closedLoop(clients, durationSec);
+                        report(out, engine.trim(), "closed", clients, 0, threads, closed);
+
+                        double rate = clients * ratePerClient;
+                        Run open = load.openLoop(rate, durationSec);
+                        report(out, engine.trim(), "open", clients, rate, threads, open);
+                    }
+                } finally {
+                    server.stop();
+                }
+            }
+        }
+    }
+
+    private static void report(PrintWriter out, String engine, String mode, int clients, double offeredRps,
+                               int threads, Run run) {
+        LatencyHistogram.Snapshot latencies = run.latencies.snapshot();
+        long ok = latencies.getCount();
+        double throughput = run.timeMs > 0 ? ok * 1000.0 / run.timeMs : 0;
+        long fewestRows = ok > 0 ? run.fewestRows.get() : 0;
+
+        out.println(String.format(Locale.ROOT, "%s,%s,%d,%.1f,%d,%d,%d,%d,%.1f,%.2f,%.2f,%.2f,%.2f,%.2f,%d,%d",
+                engine, mode, clients, offeredRps, threads, run.timeMs, fewestRows, run.requests.get(), throughput,
+                latencies.percentileMs(50), latencies.percentileMs(90), latencies.percentileMs(99),
+                latencies.percentileMs(99.9), latencies.getMaxMs(), run.busy.get(), run.errors.get()));
+        out.flush();
+        System.out.println(String.format("%s %s clients=%d%s throughput=%.1f/s p50=%.2fms p99=%.2fms busy=%d errors=%d",
+                engine, mode, clients, "open".equals(mode) ? String.format(" rate=%.1f/s", offeredRps) : "",
+                throughput, latencies.percentileMs(50), latencies.percentileMs(99), run.busy.get(), run.errors.get()));
+    }
+
+    /**
+     * What one run at one level saw
+     */
+    private static final class Run {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger busy = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicLong fewestRows = new AtomicLong(Long.MAX_VALUE);
+        long timeMs;
+    }
+
+    /**
+     * Sends the requests of one engine, each for the next URL of the origin
+     */
+    private static final class Load {
+        private final int port;
+        private final String urlPrefix;
+        private final int threads;
+        private final int rows;
+        private final AtomicLong sequence = new AtomicLong();
+
+        Load(int port, String urlPrefix, int threads, int rows) {
+            this.port = port;
+            this.urlPrefix = urlPrefix;
+            this.threads = threads;
+            this.rows = rows;
+        }
+
+        /**
+         * Runs the given number of clients for the given time, each sending its requests back to back
+         */
+        Run closedLoop(int clients, int durationSec) throws Exception {
+            Run run = new Run();
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(durationSec);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < clients; i++) {
+                    futures.add(executor.submit(() -> {
+                        while (System.nanoTime() < end) {
+                            send(System.nanoTime(), run);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            run.timeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return run;
+        }
+
+        /**
+         * Starts requests at a fixed rate for the given time, each on its own thread, then waits
+         * for the last answers
+         */
+        Run openLoop(double ratePerSec, int durationSec) throws Exception {
+            Run run = new Run();
+            ExecutorService executor = Executors.newCachedThreadPool();
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSec);
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(durationSec);
+            try {
+                for (long due = start; due < end; due += intervalNanos) {
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    long dueAt = due;
+                    executor.execute(() -> send(dueAt, run));
+                }
+                executor.shutdown();
+                if (!executor.awaitTermination(READ_TIMEOUT_MS * 2L, TimeUnit.MILLISECONDS)) {
+                    System.err.println("Open-loop requests still running after the run");
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            run.timeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return run;
+        }
+
+        /**
+         * Sends one request and records its answer
+         * @param startNanos When the request was due, which its latency counts from
+         */
+        void send(long startNanos, Run run) {
+            run.requests.incrementAndGet();
+            String json = "{\"url\":\"" + urlPrefix + sequence.incrementAndGet() + "\",\"threads\":" + threads
+                    + ",\"rows\":" + rows + "}";
+            try (Socket socket = new Socket(HOST, port)) {
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                OutputStream out = socket.getOutputStream();
+                out.write((json + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                String line = in.readLine();
+                ScrapeResult result = line != null ? GSON.fromJson(line, ScrapeResult.class) : null;
+                if (result != null && AdmissionController.BUSY.equals(result.getStatus())) {
+                    run.busy.incrementAndGet();
+                } else if (result != null && "success".equals(result.getStatus())) {
+                    run.latencies.recordSince(startNanos);
+                    int count = result.getResults() != null ? result.getResults().size() : 0;
+                    run.fewestRows.accumulateAndGet(count, Math::min);
+                } else {
+                    run.errors.incrementAndGet();
+                }
+            } catch (IOException | JsonParseException e) {
+                run.errors.incrementAndGet();
+            }
+        }
+    }
+}
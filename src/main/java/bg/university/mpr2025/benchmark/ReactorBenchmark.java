@@ -0,0 +1,117 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.server.SelectorServer;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection-rate and latency benchmark for SelectorServer at 1, 2, 4 and 8 event loops.
+ * Every client opens a new connection per request for the same, already cached page,
+ * so the numbers reflect the accept/read/write path rather than scraping.
+ */
+public class ReactorBenchmark {
+    private static final int[] EVENT_LOOPS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: ReactorBenchmark <output.csv> [clients] [durationSec] [workerThreads]");
+            return;
+        }
+
+        String csv = args[0];
+        int clients = args.length >= 2 ? Integer.parseInt(args[1]) : 64;
+        int durationSec = args.length >= 3 ? Integer.parseInt(args[2]) : 10;
+        int workers = args.length >= 4 ? Integer.parseInt(args[3]) : 16;
+
+        try (StubOrigin origin = new StubOrigin(0);
+             PrintWriter out = new PrintWriter(new FileWriter(csv))) {
+            origin.page("/news", StubOrigin.newsPage(20));
+            String request = "{\"url\":\"" + origin.url("/news") + "\",\"threads\":1,\"rows\":5}";
+
+            out.println("eventLoops,clients,durationSec,connections,connectionsPerSec,p50Ms,p99Ms,errors");
+
+            for (int loops : EVENT_LOOPS) {
+                int port = EngineBenchmark.freePort();
+                SelectorServer server = new SelectorServer(port, workers, loops);
+                EngineBenchmark.startServer(server, port);
+                try {
+                    // Warm up the page cache and the JIT before measuring
+                    for (int i = 0; i < 200; i++) {
+                        EngineBenchmark.request(port, request);
+                    }
+
+                    AtomicInteger errors = new AtomicInteger();
+                    long[] latencies = run(port, request, clients, durationSec * 1000L, errors);
+                    long perSec = latencies.length / Math.max(1, durationSec);
+
+                    out.println(loops + "," + clients + "," + durationSec + "," + latencies.length + "," + perSec + ","
+                            + EngineBenchmark.percentile(latencies, 50) + "," + EngineBenchmark.percentile(latencies, 99)
+                            + "," + errors.get());
+                    System.out.println("eventLoops=" + loops + " connections/s=" + perSec
+                            + " p50=" + EngineBenchmark.percentile(latencies, 50) + "ms p99="
+                            + EngineBenchmark.percentile(latencies, 99) + "ms errors=" + errors.get());
+                } finally {
+                    server.stop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs closed-loop clients for the given time
+     * @return Sorted latencies of all completed requests
+     */
+    private static long[] run(int port, String request, int clients, long durationMs, AtomicInteger errors)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        long deadline = System.currentTimeMillis() + durationMs;
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit(() -> {
+                    long[] samples = new long[1024];
+                    int count = 0;
+                    while (System.currentTimeMillis() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            String response = EngineBenchmark.request(port, request);
+                            if (response == null || !response.contains("\"status\":\"success\"")) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = (System.nanoTime() - start) / 1_000_000;
+                    }
+                    return Arrays.copyOf(samples, count);
+                }));
+            }
+
+            long[] all = new long[0];
+            for (Future<long[]> future : futures) {
+                long[] samples = future.get();
+                int offset = all.length;
+                all = Arrays.copyOf(all, offset + samples.length);
+                System.arraycopy(samples, 0, all, offset, samples.length);
+            }
+            Arrays.sort(all);
+            return all;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package bg.university.mpr2025.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP origin used by the benchmarks instead of a live website.
+ * Serves fixed HTML pages with an optional artificial latency, answers
+ * If-None-Match revalidations with 304 and counts how many TCP connections
+ * the clients opened against it.
+ */
+public class StubOrigin implements AutoCloseable {
+    private static final String HOST = "localhost";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> pages = new ConcurrentHashMap<>();
+    private final Set<String> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile long latencyMs;
+
+    public StubOrigin(long latencyMs) throws IOException {
+        // Without TCP_NODELAY small responses stall on delayed ACKs and hide every other cost
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.latencyMs = latencyMs;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stub-origin");
+            t.setDaemon(true);
+            return t;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(HOST, 0), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Registers the HTML served for the given path
+     */
+    public void page(String path, String html) {
+        pages.put(path, html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Registers a site of linked news pages, {@code prefix + 0} to {@code prefix + (pages - 1)}.
+     * Page i links to pages 2i+1 and 2i+2, so page 0 reaches all of them within a depth
+     * of log2(pages), and to {@code extraLinks} more pages picked at random from the seed.
+     * @return Path of page 0
+     */
+    public String linkedSite(String prefix, int pages, int extraLinks, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < pages; i++) {
+            List<Integer> targets = new ArrayList<>();
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < pages; child++) {
+                targets.add(child);
+            }
+            for (int k = 0; k < extraLinks; k++) {
+                targets.add(random.nextInt(pages));
+            }
+            page(prefix + i, linkedPage(prefix, i, targets));
+        }
+        return prefix + 0;
+    }
+
+    public String url(String path) {
+        return "http://" + HOST + ":" + server.getAddress().getPort() + path;
+    }
+
+    public void setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /**
+     * Number of distinct client connections seen since the last reset
+     */
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    public void reset() {
+        connections.clear();
+        requests.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        connections.add(exchange.getRemoteAddress().toString());
+        try (exchange) {
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            byte[] body = pages.get(exchange.getRequestURI().getPath());
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String linkedPage(String prefix, int page, List<Integer> targets) {
+        StringBuilder html = new StringBuilder(targets.size() * 400);
+        html.append("<html><head><title>Stub page ").append(page).append("</title></head><body>");
+        html.append("<header class=\"site-header\"><nav class=\"menu\"><a href=\"").append(prefix)
+            .append("0\">Home</a></nav></header>");
+        for (int target : targets) {
+            html.append("<div class=\"post-block\">")
+                .append("<h2 class=\"post-block__title\"><a class=\"post-block__title__link\" href=\"")
+                .append(prefix).append(target).append("\">Page ").append(page).append(" story about page ")
+                .append(target).append("</a></h2>")
+                .append("<div class=\"post-block__content\">Excerpt on page ").append(page)
+                .append(" with enough text to pass the length filter.</div>")
+                .append("</div>");
+        }
+        html.append("<footer>Stub footer</footer></body></html>");
+        return html.toString();
+    }
+
+    /**
+     * Builds a news-like page with the given number of articles, using the
+     * markup the scraper's content selectors expect
+     */
+    public static String newsPage(int articles) {
+        StringBuilder html = new StringBuilder(articles * 400);
+        html.append("<html><head><title>Stub news</title><script>var x = 1;</script></head><body>");
+        html.append("<header class=\"site-header\"><nav class=\"menu\"><a href=\"/\">Home</a></nav></header>");
+        for (int i = 0; i < articles; i++) {
+            html.append("<div class=\"post-block\">")
+                .append("<h2 class=\"post-block__title\"><a class=\"post-block__title__link\" href=\"/article/")
+                .append(i).append("\">Stub headline number ").append(i).append(" about technology</a></h2>")
+                .append("<div class=\"post-block__content\">Excerpt for article ").append(i)
+                .append(" with enough text to pass the length filter.</div>")
+                .append("<div class=\"social-share\">Share this</div>")
+                .append("</div>");
+        }
+        html.append("<footer>Stub footer</footer></body></html>");
+        return html.toString();
+    }
+}
@@ -1,63 +1,83 @@
 package bg.university.mpr2025.client;
 
 import bg.university.mpr2025.models.ScrapeRequest;
-import com.google.gson.Gson;
 import bg.university.mpr2025.models.ScrapeResult;
 
 import java.io.*;
-import java.net.Socket;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Client {
     private final String host;
     private final int port;
-    private final Gson gson = new Gson();
 
     public Client(String host, int port) {
         this.host = host;
         this.port = port;
     }
 
-    public void runInteractive() {
-        try (Scanner sc = new Scanner(System.in)) {
-            // Get user input
-            System.out.print("Enter URL: ");
-            String url = sc.nextLine();
-            
-            System.out.print("Enter number of threads: ");
-            int threads = Integer.parseInt(sc.nextLine());
-            
-            System.out.print("Enter number of rows to return: ");
-            int rows = Integer.parseInt(sc.nextLine());
-
-            // Create request object
-            ScrapeRequest req = new ScrapeRequest();
-            req.url = url;
-            req.threads = threads;
-            req.rows = rows;
-
-            // Convert to JSON and send to server
-            try (Socket s = new Socket(host, port);
-                 BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()));
-                 BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()))) {
+    /**
+     * Opens a persistent connection that can carry many concurrent requests
+     */
+    public ScrapeSession openSession() throws IOException {
+        return new ScrapeSession(host, port);
+    }
 
-                String json = gson.toJson(req);
-                System.out.println("Sending request: " + json);
+    public void runInteractive() {
+        try (Scanner sc = new Scanner(System.in);
+             ScrapeSession session = openSession()) {
+            while (true) {
+                // Get user input
+                System.out.print("Enter URL (empty to quit, \"stats\" for server stats): ");
+                String url = sc.nextLine().trim();
+                if (url.isEmpty()) {
+                    break;
+                }
+                if (url.equals("stats")) {
+                    for (String line : session.stats().get().getResults()) {
+                        System.out.println(line);
+                    }
+                    System.out.println();
+                    continue;
+                }
+                
+                System.out.print("Enter number of threads: ");
+                int threads = Integer.parseInt(sc.nextLine());
                 
-                out.write(json + "\n");
-                out.flush();
+                System.out.print("Enter number of rows to return: ");
+                int rows = Integer.parseInt(sc.nextLine());
+
+                // Create request object
+                ScrapeRequest req = new ScrapeRequest();
+                req.url = url;
+                req.threads = threads;
+                req.rows = rows;
 
-                // Read and parse the response
-                String responseJson = in.readLine();
-                ScrapeResult result = gson.fromJson(responseJson, ScrapeResult.class);
+                // Send it over the open connection and print rows as they arrive
+                System.out.println("Sending request for " + url);
+                System.out.println("Results:");
+                AtomicInteger count = new AtomicInteger();
+                ScrapeResult result = session.submit(req, row -> {
+                    count.incrementAndGet();
+                    System.out.println(" - " + row);
+                }).get();
 
-                // Display results
+                // Display the summary
                 System.out.println("\nServer returned status: " + result.getStatus());
                 System.out.println("Processing time: " + result.getProcessingTimeMs() + "ms");
-                System.out.println("Results (" + result.getResults().size() + " items):");
-                for (String r : result.getResults()) {
-                    System.out.println(" - " + r);
+                if (result.getRetryAfterMs() != null) {
+                    System.out.println("Try again in " + result.getRetryAfterMs() + "ms");
+                }
+                if (result.getBytesSkipped() != null) {
+                    System.out.println("Bytes of the page left unread: " + result.getBytesSkipped());
+                }
+                if (result.getResults() != null) {
+                    for (String r : result.getResults()) {
+                        System.out.println(" - " + r);
+                    }
                 }
+                System.out.println("Received " + count.get() + " items");
+                System.out.println();
             }
         } catch (NumberFormatException e) {
             System.err.println("Error: Please enter valid numbers for threads and rows");
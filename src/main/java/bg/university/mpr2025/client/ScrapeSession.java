@@ -0,0 +1,156 @@
+package bg.university.mpr2025.client;
+
+import bg.university.mpr2025.models.ScrapeRequest;
+import bg.university.mpr2025.models.ScrapeResult;
+import com.google.gson.Gson;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A persistent connection that carries many requests at once.
+ * Every request is tagged with an ID and sent with keepAlive set; the server answers
+ * in completion order and a reader thread matches each result to its request.
+ * Streamed requests additionally get their rows delivered one by one as they arrive,
+ * and streamed batches the result of each page as soon as it is done.
+ */
+public class ScrapeSession implements AutoCloseable {
+    private final Socket socket;
+    private final BufferedWriter out;
+    private final BufferedReader in;
+    private final Gson gson = new Gson();
+    private final Map<String, CompletableFuture<ScrapeResult>> pending = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<String>> rowHandlers = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<ScrapeResult>> pageHandlers = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    public ScrapeSession(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+        Thread reader = new Thread(this::readResponses, "scrape-session-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a request without waiting for earlier ones to finish
+     * @return Future completed with the matching result
+     */
+    public CompletableFuture<ScrapeResult> submit(ScrapeRequest request) {
+        return submit(request, null);
+    }
+
+    /**
+     * Sends a streamed request; rows are handed to {@code onRow} on the reader thread as they arrive
+     * @return Future completed with the closing summary, which carries status and processing time
+     */
+    public CompletableFuture<ScrapeResult> submit(ScrapeRequest request, Consumer<String> onRow) {
+        if (request.id == null) {
+            request.id = Long.toString(nextId.incrementAndGet());
+        }
+        request.keepAlive = true;
+        request.stream = onRow != null;
+        if (onRow != null) {
+            rowHandlers.put(request.id, onRow);
+        }
+        return send(request);
+    }
+
+    /**
+     * Asks for the server's latency percentiles and counters
+     * @return Future completed with the result, whose rows are the lines of the report
+     */
+    public CompletableFuture<ScrapeResult> stats() {
+        ScrapeRequest request = new ScrapeRequest();
+        request.stats = true;
+        return submit(request);
+    }
+
+    /**
+     * Sends a batch request whose pages are streamed; each page's result is handed to
+     * {@code onPage} on the reader thread as soon as it is done
+     * @return Future completed with the closing summary
+     */
+    public CompletableFuture<ScrapeResult> submitBatch(ScrapeRequest request, Consumer<ScrapeResult> onPage) {
+        if (request.id == null) {
+            request.id = Long.toString(nextId.incrementAndGet());
+        }
+        request.keepAlive = true;
+        request.stream = true;
+        pageHandlers.put(request.id, onPage);
+        return send(request);
+    }
+
+    private CompletableFuture<ScrapeResult> send(ScrapeRequest request) {
+        CompletableFuture<ScrapeResult> future = new CompletableFuture<>();
+        pending.put(request.id, future);
+        try {
+            String json = gson.toJson(request) + "\n";
+            synchronized (out) {
+                out.write(json);
+                out.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(request.id);
+            rowHandlers.remove(request.id);
+            pageHandlers.remove(request.id);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void readResponses() {
+        IOException failure = null;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                ScrapeResult result = gson.fromJson(line, ScrapeResult.class);
+                if (result.getRow() != null) {
+                    Consumer<String> onRow = result.getId() == null ? null : rowHandlers.get(result.getId());
+                    if (onRow != null) {
+                        onRow.accept(result.getRow());
+                    }
+                    continue;
+                }
+                if (result.getUrl() != null) {
+                    Consumer<ScrapeResult> onPage = result.getId() == null ? null : pageHandlers.get(result.getId());
+                    if (onPage != null) {
+                        onPage.accept(result);
+                    }
+                    continue;
+                }
+                if (result.getId() != null) {
+                    rowHandlers.remove(result.getId());
+                    pageHandlers.remove(result.getId());
+                }
+                CompletableFuture<ScrapeResult> future = result.getId() == null ? null : pending.remove(result.getId());
+                if (future != null) {
+                    future.complete(result);
+                } else {
+                    System.err.println("Unexpected response: " + line);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        IOException cause = failure != null ? failure : new EOFException("Connection closed by server");
+        pending.values().forEach(future -> future.completeExceptionally(cause));
+        pending.clear();
+        rowHandlers.clear();
+        pageHandlers.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
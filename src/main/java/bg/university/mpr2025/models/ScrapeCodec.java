@@ -0,0 +1,757 @@
+package bg.university.mpr2025.models;
+
+import bg.university.mpr2025.utils.BufferPool;
+import bg.university.mpr2025.utils.Metrics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON wire format of the scrape protocol, read and written directly as UTF-8 bytes.
+ * Requests are decoded straight from the bytes of a received frame, and results are
+ * encoded straight into pooled buffers, so neither side builds the JSON as a String.
+ * The output matches Gson's for the same objects, except that Gson additionally
+ * escapes HTML characters such as {@code <} and {@code &}; both are valid JSON.
+ * Decoding keeps scratch state and belongs to a single thread; encoding may be
+ * called from any thread.
+ */
+public final class ScrapeCodec {
+    // Upper bound for the size of one encoded buffer; larger results span several
+    private static final int MAX_CHUNK = 64 * 1024;
+    private static final int MAX_DEPTH = 64;
+    private static final ThreadLocal<byte[]> STAGING = ThreadLocal.withInitial(() -> new byte[8192]);
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private final BufferPool pool;
+
+    // Decoder state: the frame being read and the characters of the last string
+    private ByteBuffer in;
+    private int pos;
+    private int end;
+    private char[] chars = new char[256];
+
+    public ScrapeCodec(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Decodes a request from the remaining bytes of a frame and consumes them.
+     * Unknown fields are skipped; numbers and booleans sent as strings are accepted.
+     * @return The request, or null if the frame holds the JSON literal null
+     * @throws IllegalArgumentException If the frame is not a single valid JSON object
+     */
+    public ScrapeRequest decodeRequest(ByteBuffer frame) {
+        in = frame;
+        pos = frame.position();
+        end = frame.limit();
+        try {
+            ScrapeRequest request = null;
+            skipWhitespace();
+            if (peek() == 'n') {
+                expectLiteral("null");
+            } else {
+                request = new ScrapeRequest();
+                readRequest(request, 0);
+            }
+            skipWhitespace();
+            if (pos < end) {
+                throw error("unexpected data after the request");
+            }
+            frame.position(end);
+            return request;
+        } finally {
+            in = null;
+        }
+    }
+
+    /**
+     * Encodes a result as one JSON line and records how long that took in {@link Metrics}
+     * @return Buffers ready for writing, in order; give them back with {@link #release} once written
+     */
+    public List<ByteBuffer> encode(ScrapeResult result) {
+        long start = System.nanoTime();
+        Output out = new Output();
+        writeResult(out, result);
+        out.put('\n');
+        List<ByteBuffer> buffers = out.finish();
+        Metrics.shared().recordSince(Metrics.Phase.SERIALIZE, start);
+        return buffers;
+    }
+
+    /**
+     * Returns the buffers of an encoded result to the pool
+     */
+    public void release(List<ByteBuffer> buffers) {
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+    }
+
+    private void writeResult(Output out, ScrapeResult result) {
+        out.put('{');
+        boolean first = true;
+        if (result.getId() != null) {
+            first = out.name("id", first);
+            out.putString(result.getId());
+        }
+        if (result.getUrl() != null) {
+            first = out.name("url", first);
+            out.putString(result.getUrl());
+        }
+        if (result.getStatus() != null) {
+            first = out.name("status", first);
+            out.putString(result.getStatus());
+        }
+        if (result.hasProcessingTimeMs()) {
+            first = out.name("processingTimeMs", first);
+            out.putLong(result.getProcessingTimeMs());
+        }
+        if (result.getBytesSkipped() != null) {
+            first = out.name("bytesSkipped", first);
+            out.putLong(result.getBytesSkipped());
+        }
+        if (result.getRetryAfterMs() != null) {
+            first = out.name("retryAfterMs", first);
+            out.putLong(result.getRetryAfterMs());
+        }
+        if (result.getResults() != null) {
+            first = out.name("results", first);
+            out.put('[');
+            boolean firstRow = true;
+            for (String row : result.getResults()) {
+                if (!firstRow) {
+                    out.put(',');
+                }
+                firstRow = false;
+                if (row == null) {
+                    out.putAscii("null");
+                } else {
+                    out.putString(row);
+                }
+            }
+            out.put(']');
+        }
+        if (result.getBatch() != null) {
+            first = out.name("batch", first);
+            out.put('{');
+            boolean firstPage = true;
+            for (Map.Entry<String, ScrapeResult> page : result.getBatch().entrySet()) {
+                firstPage = out.key(String.valueOf(page.getKey()), firstPage);
+                if (page.getValue() == null) {
+                    out.putAscii("null");
+                } else {
+                    writeResult(out, page.getValue());
+                }
+            }
+            out.put('}');
+        }
+        if (result.getRow() != null) {
+            out.name("row", first);
+            out.putString(result.getRow());
+        }
+        out.put('}');
+    }
+
+    private void readRequest(ScrapeRequest request, int depth) {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            int length = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (nameIs("url", length)) {
+                request.url = readStringValue();
+            } else if (nameIs("threads", length)) {
+                request.threads = readIntValue(request.threads);
+            } else if (nameIs("rows", length)) {
+                request.rows = readIntValue(request.rows);
+            } else if (nameIs("id", length)) {
+                request.id = readStringValue();
+            } else if (nameIs("keepAlive", length)) {
+                request.keepAlive = readBooleanValue(request.keepAlive);
+            } else if (nameIs("stream", length)) {
+                request.stream = readBooleanValue(request.stream);
+            } else if (nameIs("incremental", length)) {
+                request.incremental = readBooleanValue(request.incremental);
+            } else if (nameIs("profile", length)) {
+                request.profile = readStringValue();
+            } else if (nameIs("crawl", length)) {
+                request.crawl = readBooleanValue(request.crawl);
+            } else if (nameIs("depth", length)) {
+                request.depth = readIntValue(request.depth);
+            } else if (nameIs("pages", length)) {
+                request.pages = readIntValue(request.pages);
+            } else if (nameIs("dedup", length)) {
+                request.dedup = readBooleanValue(request.dedup);
+            } else if (nameIs("deadlineMs", length)) {
+                request.deadlineMs = readIntValue(request.deadlineMs);
+            } else if (nameIs("stats", length)) {
+                request.stats = readBooleanValue(request.stats);
+            } else if (nameIs("batch", length)) {
+                request.batch = readRequestList(depth);
+            } else {
+                skipValue(depth);
+            }
+
+            skipWhitespace();
+            byte b = next();
+            if (b == '}') {
+                return;
+            }
+            if (b != ',') {
+                throw error("expected ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * Reads an array of requests, or null
+     */
+    private List<ScrapeRequest> readRequestList(int depth) {
+        if (depth + 1 > MAX_DEPTH) {
+            throw error("nesting too deep");
+        }
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('[');
+        List<ScrapeRequest> requests = new ArrayList<>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return requests;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() == 'n') {
+                expectLiteral("null");
+                requests.add(null);
+            } else {
+                ScrapeRequest request = new ScrapeRequest();
+                readRequest(request, depth + 2);
+                requests.add(request);
+            }
+            skipWhitespace();
+            byte b = next();
+            if (b == ']') {
+                return requests;
+            }
+            if (b != ',') {
+                throw error("expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readStringValue() {
+        byte b = peek();
+        if (b == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        if (b == '"') {
+            return new String(chars, 0, readString());
+        }
+        int start = pos;
+        skipNumber();
+        return ascii(start, pos);
+    }
+
+    private int readIntValue(int current) {
+        byte b = peek();
+        if (b == 'n') {
+            expectLiteral("null");
+            return current;
+        }
+        String text;
+        if (b == '"') {
+            text = new String(chars, 0, readString());
+        } else {
+            int start = pos;
+            boolean integral = skipNumber();
+            if (integral && pos - start <= 10) {
+                return (int) parseIntegral(start, pos);
+            }
+            text = ascii(start, pos);
+        }
+        try {
+            double value = Double.parseDouble(text);
+            if (value != (int) value) {
+                throw error("expected an int but was " + text);
+            }
+            return (int) value;
+        } catch (NumberFormatException e) {
+            throw error("expected an int but was " + text);
+        }
+    }
+
+    private boolean readBooleanValue(boolean current) {
+        switch (peek()) {
+            case 't':
+                expectLiteral("true");
+                return true;
+            case 'f':
+                expectLiteral("false");
+                return false;
+            case 'n':
+                expectLiteral("null");
+                return current;
+            case '"':
+                return Boolean.parseBoolean(new String(chars, 0, readString()));
+            default:
+                throw error("expected a boolean");
+        }
+    }
+
+    private void skipValue(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw error("nesting too deep");
+        }
+        switch (peek()) {
+            case '"':
+                readString();
+                return;
+            case 't':
+                expectLiteral("true");
+                return;
+            case 'f':
+                expectLiteral("false");
+                return;
+            case 'n':
+                expectLiteral("null");
+                return;
+            case '{':
+            case '[':
+                skipContainer(depth);
+                return;
+            default:
+                skipNumber();
+        }
+    }
+
+    private void skipContainer(int depth) {
+        byte close = next() == '{' ? (byte) '}' : (byte) ']';
+        skipWhitespace();
+        if (peek() == close) {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            if (close == '}') {
+                readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+            }
+            skipValue(depth + 1);
+            skipWhitespace();
+            byte b = next();
+            if (b == close) {
+                return;
+            }
+            if (b != ',') {
+                throw error("expected ',' or '" + (char) close + "'");
+            }
+        }
+    }
+
+    /**
+     * Skips a JSON number
+     * @return Whether it was a plain integer without fraction or exponent
+     */
+    private boolean skipNumber() {
+        int start = pos;
+        if (pos < end && in.get(pos) == '-') {
+            pos++;
+        }
+        int digits = skipDigits();
+        boolean integral = true;
+        if (pos < end && in.get(pos) == '.') {
+            pos++;
+            integral = false;
+            digits = Math.min(digits, skipDigits());
+        }
+        if (pos < end && (in.get(pos) == 'e' || in.get(pos) == 'E')) {
+            pos++;
+            integral = false;
+            if (pos < end && (in.get(pos) == '+' || in.get(pos) == '-')) {
+                pos++;
+            }
+            digits = Math.min(digits, skipDigits());
+        }
+        if (digits == 0) {
+            pos = start;
+            throw error("expected a value");
+        }
+        return integral;
+    }
+
+    private int skipDigits() {
+        int start = pos;
+        while (pos < end && in.get(pos) >= '0' && in.get(pos) <= '9') {
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private long parseIntegral(int from, int to) {
+        boolean negative = in.get(from) == '-';
+        long value = 0;
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            value = value * 10 + (in.get(i) - '0');
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw error("int out of range: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Decodes a quoted string into the scratch characters
+     * @return Number of characters decoded
+     */
+    private int readString() {
+        expect('"');
+        int length = 0;
+        while (true) {
+            if (pos >= end) {
+                throw error("unterminated string");
+            }
+            if (length + 2 > chars.length) {
+                char[] larger = new char[chars.length * 2];
+                System.arraycopy(chars, 0, larger, 0, length);
+                chars = larger;
+            }
+            byte b = in.get(pos++);
+            if (b == '"') {
+                return length;
+            }
+            if (b == '\\') {
+                chars[length++] = readEscape();
+            } else if (b >= 0) {
+                chars[length++] = (char) b;
+            } else {
+                length = readMultiByte(b & 0xFF, length);
+            }
+        }
+    }
+
+    private char readEscape() {
+        byte b = next();
+        switch (b) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) b;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int c = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) {
+                        throw error("malformed unicode escape");
+                    }
+                    c = (c << 4) | digit;
+                }
+                return (char) c;
+            default:
+                throw error("invalid escape sequence");
+        }
+    }
+
+    /**
+     * Decodes one UTF-8 sequence whose lead byte was already consumed; malformed input
+     * becomes U+FFFD, as in {@code new String(bytes, UTF_8)}
+     */
+    private int readMultiByte(int lead, int length) {
+        int codePoint = -1;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            int c1 = continuation(0);
+            if (c1 >= 0) {
+                codePoint = ((lead & 0x1F) << 6) | c1;
+                pos += 1;
+            }
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            int c1 = continuation(0);
+            int c2 = continuation(1);
+            if (c1 >= 0 && c2 >= 0) {
+                int cp = ((lead & 0x0F) << 12) | (c1 << 6) | c2;
+                if (cp >= 0x800 && !Character.isSurrogate((char) cp)) {
+                    codePoint = cp;
+                    pos += 2;
+                }
+            }
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            int c1 = continuation(0);
+            int c2 = continuation(1);
+            int c3 = continuation(2);
+            if (c1 >= 0 && c2 >= 0 && c3 >= 0) {
+                int cp = ((lead & 0x07) << 18) | (c1 << 12) | (c2 << 6) | c3;
+                if (cp >= 0x10000 && cp <= 0x10FFFF) {
+                    codePoint = cp;
+                    pos += 3;
+                }
+            }
+        }
+
+        if (codePoint < 0) {
+            chars[length++] = '\uFFFD';
+        } else if (codePoint < 0x10000) {
+            chars[length++] = (char) codePoint;
+        } else {
+            chars[length++] = Character.highSurrogate(codePoint);
+            chars[length++] = Character.lowSurrogate(codePoint);
+        }
+        return length;
+    }
+
+    private int continuation(int offset) {
+        int index = pos + offset;
+        if (index >= end) {
+            return -1;
+        }
+        int b = in.get(index) & 0xFF;
+        return (b & 0xC0) == 0x80 ? b & 0x3F : -1;
+    }
+
+    private boolean nameIs(String name, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (pos >= end || in.get(pos) != literal.charAt(i)) {
+                throw error("expected " + literal);
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            pos--;
+            throw error("expected '" + c + "'");
+        }
+    }
+
+    private byte peek() {
+        if (pos >= end) {
+            throw error("unexpected end of input");
+        }
+        return in.get(pos);
+    }
+
+    private byte next() {
+        byte b = peek();
+        pos++;
+        return b;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = in.get(pos);
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private String ascii(int from, int to) {
+        char[] text = new char[to - from];
+        for (int i = from; i < to; i++) {
+            text[i - from] = (char) in.get(i);
+        }
+        return new String(text);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Malformed JSON at byte " + (pos - in.position()) + ": " + message);
+    }
+
+    /**
+     * Growing chain of pooled buffers the encoder appends to
+     */
+    private class Output {
+        private final List<ByteBuffer> buffers = new ArrayList<>(2);
+        private ByteBuffer current = pool.acquire(pool.getMinSize());
+        // Bytes are gathered here first, since single-byte puts into a direct buffer are slow
+        private final byte[] staging = STAGING.get();
+        private int count;
+
+        boolean name(String name, boolean first) {
+            if (!first) {
+                put(',');
+            }
+            put('"');
+            putAscii(name);
+            put('"');
+            put(':');
+            return false;
+        }
+
+        /**
+         * Writes a map key, which unlike a field name may need escaping
+         */
+        boolean key(String key, boolean first) {
+            if (!first) {
+                put(',');
+            }
+            putString(key);
+            put(':');
+            return false;
+        }
+
+        void putString(String s) {
+            put('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    putAsciiChar(c);
+                } else if (c < 0x800) {
+                    put(0xC0 | (c >> 6));
+                    put(0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    put(0xF0 | (cp >> 18));
+                    put(0x80 | ((cp >> 12) & 0x3F));
+                    put(0x80 | ((cp >> 6) & 0x3F));
+                    put(0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    put('?'); // unpaired surrogate, as String.getBytes(UTF_8) does
+                } else {
+                    put(0xE0 | (c >> 12));
+                    put(0x80 | ((c >> 6) & 0x3F));
+                    put(0x80 | (c & 0x3F));
+                }
+            }
+            put('"');
+        }
+
+        private void putAsciiChar(char c) {
+            switch (c) {
+                case '"':
+                case '\\':
+                    put('\\');
+                    put(c);
+                    return;
+                case '\n':
+                    put('\\');
+                    put('n');
+                    return;
+                case '\r':
+                    put('\\');
+                    put('r');
+                    return;
+                case '\t':
+                    put('\\');
+                    put('t');
+                    return;
+                case '\b':
+                    put('\\');
+                    put('b');
+                    return;
+                case '\f':
+                    put('\\');
+                    put('f');
+                    return;
+                default:
+                    if (c < 0x20) {
+                        putAscii("\\u00");
+                        put(HEX[c >> 4]);
+                        put(HEX[c & 0xF]);
+                    } else {
+                        put(c);
+                    }
+            }
+        }
+
+        void putLong(long value) {
+            if (value == Long.MIN_VALUE) {
+                putAscii(Long.toString(value));
+                return;
+            }
+            if (value < 0) {
+                put('-');
+                value = -value;
+            }
+            long divisor = 1;
+            while (divisor <= value / 10) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                put('0' + (int) (value / divisor % 10));
+            }
+        }
+
+        void putAscii(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                put(s.charAt(i));
+            }
+        }
+
+        void put(int b) {
+            if (count == staging.length) {
+                drain();
+            }
+            staging[count++] = (byte) b;
+        }
+
+        /**
+         * Copies the staged bytes into the pooled buffers in bulk
+         */
+        private void drain() {
+            int offset = 0;
+            while (offset < count) {
+                if (!current.hasRemaining()) {
+                    int next = Math.min(current.capacity() * 2, Math.min(MAX_CHUNK, pool.getMaxSize()));
+                    current.flip();
+                    buffers.add(current);
+                    current = pool.acquire(next);
+                }
+                int n = Math.min(current.remaining(), count - offset);
+                current.put(staging, offset, n);
+                offset += n;
+            }
+            count = 0;
+        }
+
+        List<ByteBuffer> finish() {
+            drain();
+            current.flip();
+            buffers.add(current);
+            return buffers;
+        }
+    }
+}
@@ -1,8 +1,33 @@
 package bg.university.mpr2025.models;
 
+import java.util.List;
 
 public class ScrapeRequest {
     public String url;
     public int threads;
     public int rows;
+    // Correlation ID echoed back in the matching ScrapeResult
+    public String id;
+    // Keep the connection open for further requests; results may then arrive out of order
+    public boolean keepAlive;
+    // Send every row as its own line as soon as it is extracted, followed by a summary line
+    public boolean stream;
+    // Parse the page while it downloads and stop reading it once enough rows are found
+    public boolean incremental;
+    // Name of the extraction profile to use; by default it is chosen by the URL's host
+    public String profile;
+    // Pages to scrape together instead of url; each one may set url, rows, profile and incremental
+    public List<ScrapeRequest> batch;
+    // Follow links from url across its site and scrape every page reached
+    public boolean crawl;
+    // Links followed from url when crawling
+    public int depth;
+    // Pages fetched at most when crawling
+    public int pages;
+    // Drop rows repeating an earlier row, exactly or nearly, across all pages of a batch or crawl
+    public boolean dedup;
+    // Milliseconds from arrival after which the server stops and answers with the rows found so far
+    public int deadlineMs;
+    // Ask for the server's latency percentiles and counters instead of scraping
+    public boolean stats;
 }
@@ -1,11 +1,40 @@
 package bg.university.mpr2025.models;
 
 import java.util.List;
+import java.util.Map;
 
 public class ScrapeResult {
+    private String id;
+    // Set on the results of the pages of a batch
+    private String url;
     private String status;
-    private long processingTimeMs;
+    // Boxed so that streamed row lines leave it out
+    private Long processingTimeMs;
+    // Bytes of the page left unread by an incremental scrape, when its length is known
+    private Long bytesSkipped;
+    // Set on busy results: how long the client should wait before trying again
+    private Long retryAfterMs;
     private List<String> results;
+    // Result of every page of a batch, by URL, in request order
+    private Map<String, ScrapeResult> batch;
+    // Set only on the per-row lines of a streamed response
+    private String row;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
 
     public String getStatus() {
         return status;
@@ -16,13 +45,33 @@ public class ScrapeResult {
     }
 
     public long getProcessingTimeMs() {
-        return processingTimeMs;
+        return processingTimeMs == null ? 0 : processingTimeMs;
     }
 
     public void setProcessingTimeMs(long processingTimeMs) {
         this.processingTimeMs = processingTimeMs;
     }
 
+    public boolean hasProcessingTimeMs() {
+        return processingTimeMs != null;
+    }
+
+    public Long getBytesSkipped() {
+        return bytesSkipped;
+    }
+
+    public void setBytesSkipped(Long bytesSkipped) {
+        this.bytesSkipped = bytesSkipped;
+    }
+
+    public Long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    public void setRetryAfterMs(Long retryAfterMs) {
+        this.retryAfterMs = retryAfterMs;
+    }
+
     public List<String> getResults() {
         return results;
     }
@@ -30,4 +79,20 @@ public class ScrapeResult {
     public void setResults(List<String> results) {
         this.results = results;
     }
+
+    public Map<String, ScrapeResult> getBatch() {
+        return batch;
+    }
+
+    public void setBatch(Map<String, ScrapeResult> batch) {
+        this.batch = batch;
+    }
+
+    public String getRow() {
+        return row;
+    }
+
+    public void setRow(String row) {
+        this.row = row;
+    }
 }
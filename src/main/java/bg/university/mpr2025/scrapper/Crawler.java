@@ -0,0 +1,383 @@
+package bg.university.mpr2025.scrapper;
+
+import bg.university.mpr2025.scrapper.HttpFetcher.FetchedPage;
+import bg.university.mpr2025.utils.LongHashSet;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Crawls a site from a seed URL, following links up to a depth and a page budget.
+ * The frontier keeps one queue per host, each ordered by depth and then by discovery,
+ * so shallow pages come first. Pages are fetched asynchronously and parsed on the
+ * scraper pool, many at once across hosts, while each host gets no more fetches at once
+ * than the {@link FetchLimiter} allows and no two fetch starts closer than the host delay.
+ * Seen URLs are remembered as 64-bit fingerprints in a {@link LongHashSet}, 16 bytes
+ * per URL, so a crawl can pass millions of links without keeping their strings; the
+ * frontier itself never holds more URLs than the page budget.
+ * The crawl stays on the seed's site: its host and that host's subdomains, without
+ * a leading {@code www.}. Once its {@link Deadline} expires no further page is started.
+ */
+public final class Crawler {
+    private static final long HOST_DELAY_MS = Long.getLong("scraper.crawl.hostDelayMs", 200);
+
+    private final HttpFetcher fetcher;
+    private final ParallelScraper scraper;
+    private final FetchLimiter limiter;
+    private final Executor cpu;
+    private final long hostDelayMs;
+
+    /**
+     * A crawler parsing on the shared scraper pool. Set {@code -Dscraper.crawl.hostDelayMs}
+     * to change the default of 200 ms between fetch starts on the same host.
+     */
+    public Crawler(HttpFetcher fetcher, ParallelScraper scraper, FetchLimiter limiter) {
+        this(fetcher, scraper, limiter, ScraperExecutor.pool(), HOST_DELAY_MS);
+    }
+
+    /**
+     * @param cpu Runs the parsing and extraction of fetched pages
+     * @param hostDelayMs Minimum time between two fetch starts on the same host
+     */
+    public Crawler(HttpFetcher fetcher, ParallelScraper scraper, FetchLimiter limiter, Executor cpu, long hostDelayMs) {
+        this.fetcher = fetcher;
+        this.scraper = scraper;
+        this.limiter = limiter;
+        this.cpu = cpu;
+        this.hostDelayMs = hostDelayMs;
+    }
+
+    /**
+     * Receives the crawled pages on the crawling thread, in completion order
+     */
+    @FunctionalInterface
+    public interface PageSink {
+
+        /**
+         * @throws IOException If the page cannot be delivered; the crawl is then abandoned
+         */
+        void accept(Page page) throws IOException;
+    }
+
+    /**
+     * Crawls from the seed and hands every page to the sink as soon as it is done
+     * @param maxDepth Number of links followed from the seed; 0 crawls the seed only
+     * @param maxPages Pages fetched at most, the seed included; URLs past this budget are not queued
+     * @param rowsPerPage Maximum number of rows per page, or 0 for all
+     * @return Number of pages crawled
+     */
+    public int crawl(String seed, ExtractionProfile profile, int maxDepth, int maxPages, int rowsPerPage,
+                     PageSink sink) throws InterruptedException, IOException {
+        return crawl(seed, profile, maxDepth, maxPages, rowsPerPage, null, sink);
+    }
+
+    /**
+     * Like {@link #crawl(String, ExtractionProfile, int, int, int, PageSink)}, but every page's
+     * rows are checked against the deduplicator, so a story repeated across pages appears once
+     * @param dedup Shared by all pages of the crawl, or null to keep duplicates
+     */
+    public int crawl(String seed, ExtractionProfile profile, int maxDepth, int maxPages, int rowsPerPage,
+                     RowDeduplicator dedup, PageSink sink) throws InterruptedException, IOException {
+        return crawl(seed, profile, maxDepth, maxPages, rowsPerPage, dedup, Deadline.none(), sink);
+    }
+
+    /**
+     * Like {@link #crawl(String, ExtractionProfile, int, int, int, RowDeduplicator, PageSink)}, but
+     * no page is started once the deadline passes or is cancelled. Fetches under way are aborted
+     * and pages being scraped keep the rows found so far, with an error telling why they stopped;
+     * the crawl returns once they have all reached the sink.
+     */
+    public int crawl(String seed, ExtractionProfile profile, int maxDepth, int maxPages, int rowsPerPage,
+                     RowDeduplicator dedup, Deadline deadline, PageSink sink) throws InterruptedException, IOException {
+        Crawl crawl = new Crawl(seed, profile, maxDepth, maxPages, rowsPerPage, dedup, deadline);
+        return crawl.run(sink);
+    }
+
+    private static String siteOf(String host) {
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    /**
+     * A crawled page: its rows, or why it could not be crawled
+     */
+    public static final class Page {
+        private final String url;
+        private final int depth;
+        private final List<String> rows;
+        private final String error;
+        private final long timeMs;
+
+        Page(String url, int depth, List<String> rows, String error, long timeMs) {
+            this.url = url;
+            this.depth = depth;
+            this.rows = rows;
+            this.error = error;
+            this.timeMs = timeMs;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Number of links followed from the seed to reach this page
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * The rows, or null if the page failed; cut short if the crawl's deadline expired while
+         * the page was scraped, in which case {@link #getError()} is set as well
+         */
+        public List<String> getRows() {
+            return rows;
+        }
+
+        /**
+         * Why the page failed or was cut short, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Time from the start of the fetch to the last row, in milliseconds
+         */
+        public long getTimeMs() {
+            return timeMs;
+        }
+    }
+
+    /**
+     * A queued URL; lower depth first, then in discovery order
+     */
+    private static final class Entry {
+        private static final Comparator<Entry> ORDER =
+                Comparator.<Entry>comparingInt(e -> e.depth).thenComparingLong(e -> e.sequence);
+
+        private final String url;
+        private final int depth;
+        private final long sequence;
+
+        Entry(String url, int depth, long sequence) {
+            this.url = url;
+            this.depth = depth;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * The URLs queued for one host and when the next fetch may start
+     */
+    private static final class HostQueue {
+        private static final Comparator<HostQueue> BY_NEXT_START = Comparator.comparingLong(h -> h.nextStart);
+
+        private final String host;
+        private final PriorityQueue<Entry> entries = new PriorityQueue<>(Entry.ORDER);
+        private long nextStart;
+        private boolean scheduled;
+
+        HostQueue(String host) {
+            this.host = host;
+        }
+    }
+
+    /**
+     * A fetched and processed page together with the links found on it
+     */
+    private static final class Fetched {
+        private final Page page;
+        private final List<String> links;
+
+        Fetched(Page page, List<String> links) {
+            this.page = page;
+            this.links = links;
+        }
+    }
+
+    /**
+     * One call to {@link #crawl}. Everything but the page tasks runs on the crawling thread,
+     * so the frontier needs no locking; finished pages come back through a queue.
+     */
+    private final class Crawl {
+        private final String site;
+        private final ExtractionProfile profile;
+        private final int maxDepth;
+        private final int maxPages;
+        private final int rowsPerPage;
+        private final RowDeduplicator dedup;
+        private final Deadline deadline;
+        private final LongHashSet seen = new LongHashSet();
+        private final Map<String, HostQueue> hosts = new HashMap<>();
+        // Hosts with queued URLs, by when they may be fetched from next
+        private final PriorityQueue<HostQueue> ready = new PriorityQueue<>(HostQueue.BY_NEXT_START);
+        private final BlockingQueue<Fetched> done = new LinkedBlockingQueue<>();
+        private long sequence;
+        private int queued;
+        private int started;
+        private int running;
+
+        Crawl(String seed, ExtractionProfile profile, int maxDepth, int maxPages, int rowsPerPage,
+              RowDeduplicator dedup, Deadline deadline) {
+            this.site = siteOf(Urls.host(seed));
+            this.profile = profile;
+            this.maxDepth = Math.max(0, maxDepth);
+            this.maxPages = Math.max(1, maxPages);
+            this.rowsPerPage = rowsPerPage;
+            this.dedup = dedup;
+            this.deadline = deadline;
+            enqueue(Urls.normalize(seed), 0);
+        }
+
+        int run(PageSink sink) throws InterruptedException, IOException {
+            int crawled = 0;
+            while (true) {
+                for (Fetched fetched = done.poll(); fetched != null; fetched = done.poll()) {
+                    running--;
+                    crawled++;
+                    if (fetched.page.getDepth() < maxDepth) {
+                        for (String link : fetched.links) {
+                            enqueue(Urls.normalize(link), fetched.page.getDepth() + 1);
+                        }
+                    }
+                    sink.accept(fetched.page);
+                }
+                if (deadline.isExpired()) {
+                    // Out of time: start nothing more and wait for the pages under way, which stop as well
+                    ready.clear();
+                }
+                if (ready.isEmpty() && running == 0) {
+                    return crawled;
+                }
+
+                // Taken before trying, so a permit released meanwhile is not missed
+                long version = limiter.version();
+                launchReady();
+                long now = System.currentTimeMillis();
+                HostQueue next = ready.peek();
+                // Every page of this crawl releases its permit when done, which wakes us as well
+                if (next == null) {
+                    if (running > 0) {
+                        limiter.awaitRelease(version);
+                    }
+                } else if (next.nextStart <= now) {
+                    limiter.awaitRelease(version, deadline); // all permits are taken
+                } else {
+                    limiter.awaitRelease(version, Math.min(next.nextStart - now, deadline.remainingMs()));
+                }
+            }
+        }
+
+        /**
+         * Starts a fetch on every host whose delay has passed, while the limiter lets them through.
+         * A host the limiter refuses, because other fetches use up its share, is retried after
+         * the host delay.
+         */
+        private void launchReady() {
+            List<HostQueue> refused = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            while (!ready.isEmpty() && ready.peek().nextStart <= now && started < maxPages
+                    && limiter.getActive() < limiter.getMaxTotal()) {
+                HostQueue host = ready.poll();
+                host.nextStart = now + hostDelayMs;
+                if (!limiter.tryAcquire(host.host)) {
+                    refused.add(host);
+                    continue;
+                }
+                launch(host, host.entries.poll());
+                if (host.entries.isEmpty()) {
+                    host.scheduled = false;
+                } else {
+                    ready.add(host);
+                }
+            }
+            ready.addAll(refused);
+            if (started >= maxPages) {
+                // The budget is spent; whatever is still queued will never be fetched
+                ready.clear();
+            }
+        }
+
+        private void launch(HostQueue host, Entry entry) {
+            started++;
+            running++;
+            long start = System.nanoTime();
+            fetcher.fetchAsync(entry.url, deadline)
+                    .thenApplyAsync(page -> process(entry, page, start), cpu)
+                    .exceptionally(e -> failed(entry, e, start))
+                    .thenAccept(fetched -> {
+                        // Queued before the permit is released, so the crawl sees it when it wakes up
+                        done.add(fetched);
+                        limiter.release(host.host);
+                    });
+        }
+
+        private Fetched process(Entry entry, FetchedPage fetchedPage, long start) {
+            try {
+                Document doc = fetchedPage.parse(deadline);
+                // Links are taken before cleaning, which drops navigation
+                List<String> links = new ArrayList<>();
+                if (entry.depth < maxDepth) {
+                    for (Element a : doc.select("a[href]")) {
+                        String link = a.absUrl("href");
+                        if (!link.isEmpty()) {
+                            links.add(link);
+                        }
+                    }
+                }
+                // One thread per page: pages are already processed side by side on the pool
+                List<String> rows = new ArrayList<>();
+                String error = null;
+                try {
+                    scraper.scrape(doc, profile, 1, rowsPerPage, dedup, deadline, rows::add);
+                } catch (DeadlineExceededException e) {
+                    error = e.getMessage();
+                }
+                return new Fetched(new Page(entry.url, entry.depth, rows, error, elapsedMs(start)), links);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        private Fetched failed(Entry entry, Throwable e, long start) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            return new Fetched(new Page(entry.url, entry.depth, null, cause.getMessage(), elapsedMs(start)), List.of());
+        }
+
+        private void enqueue(String url, int depth) {
+            if (queued >= maxPages || !url.startsWith("http://") && !url.startsWith("https://")) {
+                return;
+            }
+            String host = Urls.host(url);
+            if (!host.equals(site) && !host.endsWith("." + site)) {
+                return;
+            }
+            if (!seen.add(Urls.fingerprint(url))) {
+                return;
+            }
+            queued++;
+            HostQueue hostQueue = hosts.computeIfAbsent(host, HostQueue::new);
+            hostQueue.entries.add(new Entry(url, depth, sequence++));
+            if (!hostQueue.scheduled) {
+                hostQueue.scheduled = true;
+                ready.add(hostQueue);
+            }
+        }
+
+        private long elapsedMs(long start) {
+            return (System.nanoTime() - start) / 1_000_000;
+        }
+    }
+}
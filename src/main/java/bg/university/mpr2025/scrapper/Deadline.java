@@ -0,0 +1,183 @@
+package bg.university.mpr2025.scrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When the work for one request has to stop: at a point in time, when it is cancelled, e.g.
+ * because its client went away, or whichever comes first. A deadline without a time can still
+ * be cancelled.
+ * Stages that loop check {@link #isExpired()} as they go; stages that wait register an action
+ * with {@link #onExpiry}, which runs once the time has come or on cancellation, to abort the
+ * wait, the download or the tasks they started. Thread-safe.
+ */
+public final class Deadline {
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "deadline-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        // Requests mostly finish in time, so their timers are cancelled rather than run
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final boolean timed;
+    private final long expiresAt;
+    private volatile String cancelled;
+    // Guarded by this; null once the actions have run
+    private List<Runnable> actions = new ArrayList<>(2);
+    private ScheduledFuture<?> timer;
+
+    private Deadline(boolean timed, long expiresAt) {
+        this.timed = timed;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * A deadline that never passes but can still be cancelled
+     */
+    public static Deadline none() {
+        return new Deadline(false, 0);
+    }
+
+    /**
+     * A deadline the given time from now
+     */
+    public static Deadline after(long timeoutMs) {
+        return at(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+    }
+
+    /**
+     * @param nanoTime {@link System#nanoTime()} at which the deadline passes
+     */
+    public static Deadline at(long nanoTime) {
+        return new Deadline(true, nanoTime);
+    }
+
+    /**
+     * Whether the deadline has a time, as opposed to only being cancellable
+     */
+    public boolean isTimed() {
+        return timed;
+    }
+
+    public boolean isExpired() {
+        return cancelled != null || timed && System.nanoTime() - expiresAt >= 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled != null;
+    }
+
+    /**
+     * Time left in nanoseconds: 0 once expired, {@link Long#MAX_VALUE} without a time
+     */
+    public long remainingNanos() {
+        if (cancelled != null) {
+            return 0;
+        }
+        return timed ? Math.max(0, expiresAt - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Time left in milliseconds, rounded up so that a deadline not yet passed has some left
+     */
+    public long remainingMs() {
+        long nanos = remainingNanos();
+        return nanos == Long.MAX_VALUE ? Long.MAX_VALUE : (nanos + 999_999) / 1_000_000;
+    }
+
+    /**
+     * Expires the deadline now and runs the registered actions on the calling thread
+     * @param reason Why, e.g. "client disconnected"; only the first cancellation counts
+     */
+    public void cancel(String reason) {
+        synchronized (this) {
+            if (cancelled != null) {
+                return;
+            }
+            cancelled = reason;
+        }
+        fire();
+    }
+
+    /**
+     * @throws DeadlineExceededException If the deadline has passed or was cancelled
+     */
+    public void check() throws DeadlineExceededException {
+        if (isExpired()) {
+            throw exceeded();
+        }
+    }
+
+    /**
+     * The exception telling why the work stopped
+     */
+    public DeadlineExceededException exceeded() {
+        String reason = cancelled;
+        return reason != null
+                ? new DeadlineExceededException("Cancelled: " + reason, true)
+                : new DeadlineExceededException("Deadline exceeded", false);
+    }
+
+    /**
+     * Runs the action once the deadline passes or is cancelled, on the thread that notices,
+     * or right away if it already has. The action should be quick and must not block.
+     * @return Unregisters the action; to be called once it is no longer needed
+     */
+    public Runnable onExpiry(Runnable action) {
+        synchronized (this) {
+            if (actions != null && !isExpired()) {
+                actions.add(action);
+                if (timed && timer == null) {
+                    timer = TIMER.schedule(this::fire, expiresAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                return () -> remove(action);
+            }
+        }
+        action.run();
+        return () -> { };
+    }
+
+    private synchronized void remove(Runnable action) {
+        if (actions == null) {
+            return;
+        }
+        actions.remove(action);
+        // Nothing left to wake, so the timer need not stay queued until the deadline
+        if (actions.isEmpty() && timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+    }
+
+    private void fire() {
+        List<Runnable> fired;
+        synchronized (this) {
+            fired = actions;
+            actions = null;
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+        }
+        if (fired != null) {
+            for (Runnable action : fired) {
+                action.run();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (cancelled != null) {
+            return "Deadline{cancelled: " + cancelled + "}";
+        }
+        return timed ? "Deadline{" + remainingMs() + " ms left}" : "Deadline{none}";
+    }
+}
@@ -0,0 +1,26 @@
+package bg.university.mpr2025.scrapper;
+
+import java.io.IOException;
+
+/**
+ * Thrown when work stops because its {@link Deadline} passed or was cancelled.
+ * Rows pushed to a sink before it was thrown are valid; they are the part of the result
+ * found in time.
+ */
+public class DeadlineExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean cancelled;
+
+    public DeadlineExceededException(String message, boolean cancelled) {
+        super(message);
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Whether the work was cancelled, e.g. because its client went away, rather than out of time
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
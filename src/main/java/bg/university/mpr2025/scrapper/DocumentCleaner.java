@@ -0,0 +1,173 @@
+package bg.university.mpr2025.scrapper;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Strips navigation, ads and other non-content markup from a page in a single pass.
+ * An element is pruned together with its subtree when its tag is ignored, its id equals
+ * an ignored name, or its lower-cased class attribute contains an ignored name; what is
+ * left is then freed of elements that became empty. The result is the same as running
+ * one {@code select(...).remove()} per tag, {@code .name}, {@code #name},
+ * {@code [class*=name]} and finally {@code :empty}, without walking the tree for each.
+ */
+public final class DocumentCleaner {
+    private static final Set<String> IGNORED_ELEMENTS = new HashSet<>(Arrays.asList(
+        "script", "style", "noscript", "iframe", "object", "embed",
+        "nav", "footer", "header", "aside", "form", "button",
+        "input", "textarea", "select"
+    ));
+
+    private static final Set<String> IGNORED_CLASSES = new HashSet<>(Arrays.asList(
+        "menu", "advertisement", "social", "share", "related", "popular", "trending",
+        "newsletter", "subscribe", "cookie", "privacy", "modal", "overlay", "banner"
+    ));
+
+    private static final DocumentCleaner STANDARD = new DocumentCleaner(IGNORED_ELEMENTS, IGNORED_CLASSES);
+
+    private static final Evaluator EMPTY = new Evaluator.IsEmpty();
+    // Nodes visited between two looks at the deadline; a power of two
+    private static final int CHECK_INTERVAL = 256;
+
+    private final Set<String> ignoredTags;
+    private final Set<String> ignoredNames;
+    private final NameMatcher ignoredClasses;
+
+    /**
+     * @param ignoredTags Tag names whose elements are removed
+     * @param ignoredNames ASCII names matched exactly against ids and as substrings of class attributes
+     */
+    public DocumentCleaner(Collection<String> ignoredTags, Collection<String> ignoredNames) {
+        this.ignoredTags = new HashSet<>();
+        for (String tag : ignoredTags) {
+            this.ignoredTags.add(tag.toLowerCase(Locale.ENGLISH));
+        }
+        this.ignoredNames = new HashSet<>(ignoredNames);
+        this.ignoredClasses = new NameMatcher(ignoredNames);
+    }
+
+    /**
+     * The cleaner used by the scraper
+     */
+    public static DocumentCleaner standard() {
+        return STANDARD;
+    }
+
+    public Set<String> getIgnoredTags() {
+        return Collections.unmodifiableSet(ignoredTags);
+    }
+
+    public Set<String> getIgnoredNames() {
+        return Collections.unmodifiableSet(ignoredNames);
+    }
+
+    /**
+     * Cleans the element's subtree in place; the element itself is only checked for being empty
+     */
+    public void clean(Element root) {
+        prune(root, null);
+    }
+
+    /**
+     * Like {@link #clean(Element)}, but stops once the deadline expires, checking it every
+     * few hundred nodes; the subtree is then left partly cleaned
+     * @throws DeadlineExceededException If the deadline expired before the subtree was clean
+     */
+    public void clean(Element root, Deadline deadline) throws DeadlineExceededException {
+        if (!prune(root, deadline)) {
+            throw deadline.exceeded();
+        }
+    }
+
+    /**
+     * @param deadline The deadline, or null for none
+     * @return False if the deadline expired first
+     */
+    private boolean prune(Element root, Deadline deadline) {
+        List<Element> empty = new ArrayList<>();
+        boolean[] expired = new boolean[1];
+
+        NodeTraversor.filter(new NodeFilter() {
+            private int visited;
+
+            @Override
+            public FilterResult head(Node node, int depth) {
+                if (deadline != null && (++visited & (CHECK_INTERVAL - 1)) == 0 && deadline.isExpired()) {
+                    expired[0] = true;
+                    return FilterResult.STOP;
+                }
+                if (node != root && node instanceof Element && isIgnored((Element) node)) {
+                    return FilterResult.REMOVE;
+                }
+                return FilterResult.CONTINUE;
+            }
+
+            @Override
+            public FilterResult tail(Node node, int depth) {
+                // Children are final by now; removal waits so parents of empty elements stay
+                if (node instanceof Element && EMPTY.matches(root, (Element) node)) {
+                    empty.add((Element) node);
+                }
+                return FilterResult.CONTINUE;
+            }
+        }, root);
+        if (expired[0]) {
+            return false;
+        }
+
+        for (Element element : empty) {
+            element.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Whether {@link #clean} would remove the element together with an ignored ancestor or itself.
+     * Only the element and its ancestors are looked at, so this works on a page still being parsed.
+     */
+    public boolean isPruned(Element element) {
+        for (Element e = element; e != null; e = e.parent()) {
+            if (isIgnored(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isIgnored(Element element) {
+        if (ignoredTags.contains(element.normalName())) {
+            return true;
+        }
+        if (element.attributesSize() == 0) {
+            return false;
+        }
+        return ignoredNames.contains(element.id()) || hasIgnoredClass(element, element.attr("class"));
+    }
+
+    private boolean hasIgnoredClass(Element element, String className) {
+        if (ignoredClasses.isContainedIn(className)) {
+            return true;
+        }
+        if (!NameMatcher.isAscii(className)) {
+            // hasClass() ignores case per character, which can match where lower-casing does not
+            for (String name : ignoredNames) {
+                if (element.hasClass(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
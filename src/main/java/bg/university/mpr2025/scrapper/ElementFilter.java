@@ -0,0 +1,143 @@
+package bg.university.mpr2025.scrapper;
+
+import org.jsoup.nodes.CDataNode;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides whether a content element becomes a row, and builds the row only if it does.
+ * The cheap rejections come first and allocate nothing: the tag name, then unwanted names
+ * in the class and id attributes, matched in place, then an upper bound on the length of the
+ * element's text taken from its text nodes. Only an element that passes them all has its
+ * text built, which is then checked for the exact minimum length. The outcome is the same
+ * as lower-casing class and id, testing them with {@code contains} and measuring
+ * {@code element.text().trim()} for every element.
+ */
+public final class ElementFilter {
+    private static final List<String> UNWANTED_TAGS = Arrays.asList(
+        "meta", "link", "script", "style", "noscript"
+    );
+
+    // Navigation and footer markup
+    private static final List<String> UNWANTED_NAMES = Arrays.asList(
+        "navi", "footer", "header", "menu"
+    );
+
+    private static final ElementFilter STANDARD = new ElementFilter(UNWANTED_TAGS, UNWANTED_NAMES, 10);
+
+    private final Set<String> unwantedTags;
+    private final List<String> unwantedNameList;
+    private final NameMatcher unwantedNames;
+    private final int minTextLength;
+
+    /**
+     * @param unwantedTags Tag names whose elements never become rows
+     * @param unwantedNames ASCII names that reject an element when its class or id contains them
+     * @param minTextLength Texts shorter than this are dropped
+     */
+    public ElementFilter(Collection<String> unwantedTags, Collection<String> unwantedNames, int minTextLength) {
+        this.unwantedTags = new HashSet<>();
+        for (String tag : unwantedTags) {
+            this.unwantedTags.add(tag.toLowerCase(Locale.ENGLISH));
+        }
+        this.unwantedNameList = List.copyOf(unwantedNames);
+        this.unwantedNames = new NameMatcher(unwantedNames);
+        this.minTextLength = Math.max(1, minTextLength);
+    }
+
+    /**
+     * The filter the scraper has always used: at least 10 characters, no navigation or metadata
+     */
+    public static ElementFilter standard() {
+        return STANDARD;
+    }
+
+    /**
+     * Same rules as this filter with a different minimum text length
+     */
+    public ElementFilter withMinTextLength(int minTextLength) {
+        return minTextLength == this.minTextLength ? this
+                : new ElementFilter(unwantedTags, unwantedNameList, minTextLength);
+    }
+
+    public int getMinTextLength() {
+        return minTextLength;
+    }
+
+    /**
+     * @return The element's trimmed text, or null if the element does not make a row
+     */
+    public String rowOf(Element element) {
+        if (!mayAccept(element)) {
+            return null;
+        }
+        String text = element.text().trim();
+        return text.length() < minTextLength ? null : text;
+    }
+
+    /**
+     * Runs only the checks that build nothing. False means {@link #rowOf} returns null, also
+     * after any of the element's descendants are removed, since that only shortens its text.
+     */
+    public boolean mayAccept(Element element) {
+        if (element == null || unwantedTags.contains(element.normalName())) {
+            return false;
+        }
+        if (element.attributesSize() > 0
+                && (unwantedNames.isContainedIn(element.attr("class")) || unwantedNames.isContainedIn(element.id()))) {
+            return false;
+        }
+        return textLengthBound(element, isPreformatted(element), 0) >= minTextLength;
+    }
+
+    /**
+     * Upper bound on the length of {@code element.text()}, stopping once it reaches the minimum.
+     * Outside preformatted elements a text node yields at most its visible characters with one
+     * space around each, and every element may add a space before and after itself.
+     */
+    private int textLengthBound(Element element, boolean preformatted, int bound) {
+        bound += 2;
+        for (int i = 0; i < element.childNodeSize() && bound < minTextLength; i++) {
+            Node child = element.childNode(i);
+            if (child instanceof TextNode) {
+                // Preformatted and CDATA text is copied as it is
+                String text = ((TextNode) child).getWholeText();
+                bound += preformatted || child instanceof CDataNode
+                        ? text.length()
+                        : Math.min(text.length(), 2 * visibleChars(text) + 1);
+            } else if (child instanceof Element) {
+                Element childElement = (Element) child;
+                bound = textLengthBound(childElement, preformatted || childElement.tag().preserveWhitespace(), bound);
+            }
+        }
+        return bound;
+    }
+
+    private int visibleChars(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\f' && c != '\r' && c != 160) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isPreformatted(Element element) {
+        for (Element e = element; e != null; e = e.parent()) {
+            if (e.tag().preserveWhitespace()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,123 @@
+package bg.university.mpr2025.scrapper;
+
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How content is extracted from the pages of a site: the selectors of the elements that
+ * hold it, the cleaner that strips everything else first and the filter that turns the
+ * matched elements into rows.
+ * Selectors are parsed once, when the profile is created, and run in the order given,
+ * so the rows of a page always come out in the same order.
+ */
+public final class ExtractionProfile {
+    public static final String DEFAULT_NAME = "default";
+
+    private static final ExtractionProfile STANDARD = new ExtractionProfile(DEFAULT_NAME, List.of(),
+            List.of(
+                "h2.post-block__title a",  // Article titles
+                "div.post-block__content", // Article excerpts
+                "a.post-block__title__link" // Article links
+            ),
+            DocumentCleaner.standard(), 10);
+
+    private final String name;
+    private final List<String> hosts;
+    private final List<String> selectors;
+    private final List<Evaluator> evaluators;
+    // All selectors as one group, for matching elements one at a time
+    private final Evaluator content;
+    private final DocumentCleaner cleaner;
+    private final ElementFilter filter;
+
+    /**
+     * @param name Name requests use to pick the profile
+     * @param hosts Hosts the profile applies to, subdomains included
+     * @param selectors CSS selectors of the content elements, in output order
+     * @param cleaner Strips non-content markup before the selectors run
+     * @param minTextLength Texts shorter than this are dropped
+     * @throws IllegalArgumentException If there are no selectors or one of them does not parse
+     */
+    public ExtractionProfile(String name, Collection<String> hosts, List<String> selectors,
+                             DocumentCleaner cleaner, int minTextLength) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Extraction profile needs a name");
+        }
+        if (selectors == null || selectors.isEmpty()) {
+            throw new IllegalArgumentException("Extraction profile " + name + " has no selectors");
+        }
+        List<String> lowerHosts = new ArrayList<>();
+        for (String host : hosts) {
+            lowerHosts.add(host.trim().toLowerCase(Locale.ROOT));
+        }
+        List<Evaluator> compiled = new ArrayList<>(selectors.size());
+        try {
+            for (String selector : selectors) {
+                compiled.add(QueryParser.parse(selector));
+            }
+            this.content = QueryParser.parse(String.join(", ", selectors));
+        } catch (Selector.SelectorParseException e) {
+            throw new IllegalArgumentException("Invalid selector in extraction profile " + name + ": " + e.getMessage(), e);
+        }
+        this.name = name.trim();
+        this.hosts = List.copyOf(lowerHosts);
+        this.selectors = List.copyOf(selectors);
+        this.evaluators = List.copyOf(compiled);
+        this.cleaner = cleaner;
+        this.filter = ElementFilter.standard().withMinTextLength(minTextLength);
+    }
+
+    /**
+     * The built-in profile for TechCrunch-style news pages, used when no other one applies
+     */
+    public static ExtractionProfile standard() {
+        return STANDARD;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public List<String> getSelectors() {
+        return selectors;
+    }
+
+    public DocumentCleaner getCleaner() {
+        return cleaner;
+    }
+
+    public ElementFilter getFilter() {
+        return filter;
+    }
+
+    public int getMinTextLength() {
+        return filter.getMinTextLength();
+    }
+
+    /**
+     * One compiled evaluator per selector, in the same order
+     */
+    List<Evaluator> getEvaluators() {
+        return evaluators;
+    }
+
+    Evaluator getContentEvaluator() {
+        return content;
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractionProfile{name=" + name + ", hosts=" + hosts + ", selectors=" + selectors
+                + ", minTextLength=" + getMinTextLength() + "}";
+    }
+}
@@ -0,0 +1,144 @@
+package bg.university.mpr2025.scrapper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caps how many pages are scraped at once, in total and per host.
+ * Permits are only ever taken without blocking, so a caller holding a queue of pages for
+ * different hosts can start whichever is allowed and never ties up a slot waiting for a busy
+ * host. When nothing can start, it waits for the next permit to be returned by anyone.
+ */
+public class FetchLimiter {
+    private static final FetchLimiter SHARED = new FetchLimiter(
+            Integer.getInteger("scraper.batch.maxConcurrent", 32), Integer.getInteger("scraper.batch.maxPerHost", 4));
+
+    private final int maxTotal;
+    private final int maxPerHost;
+    private final Map<String, Integer> perHost = new HashMap<>();
+    private int total;
+    // Counts releases, so a waiter can tell whether one happened since it last looked
+    private long releases;
+
+    /**
+     * @param maxTotal Pages scraped at once overall
+     * @param maxPerHost Pages scraped at once from the same host
+     */
+    public FetchLimiter(int maxTotal, int maxPerHost) {
+        if (maxTotal < 1 || maxPerHost < 1) {
+            throw new IllegalArgumentException("Limits must be positive: " + maxTotal + ", " + maxPerHost);
+        }
+        this.maxTotal = maxTotal;
+        this.maxPerHost = maxPerHost;
+    }
+
+    /**
+     * Returns the limiter shared by the whole process. Set {@code -Dscraper.batch.maxConcurrent}
+     * and {@code -Dscraper.batch.maxPerHost} to change its limits of 32 and 4.
+     */
+    public static FetchLimiter shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a permit for the host if both limits allow it
+     * @return Whether the permit was taken; if so, it must be given back with {@link #release}
+     */
+    public synchronized boolean tryAcquire(String host) {
+        int active = perHost.getOrDefault(host, 0);
+        if (total >= maxTotal || active >= maxPerHost) {
+            return false;
+        }
+        total++;
+        perHost.put(host, active + 1);
+        return true;
+    }
+
+    public synchronized void release(String host) {
+        Integer active = perHost.get(host);
+        if (active == null) {
+            throw new IllegalStateException("No permit held for " + host);
+        }
+        // Idle hosts are dropped, so the map only holds hosts being scraped
+        if (active == 1) {
+            perHost.remove(host);
+        } else {
+            perHost.put(host, active - 1);
+        }
+        total--;
+        releases++;
+        notifyAll();
+    }
+
+    /**
+     * Marks the point after which {@link #awaitRelease} waits for a release
+     */
+    public synchronized long version() {
+        return releases;
+    }
+
+    /**
+     * Waits until a permit has been released since {@code version} was taken
+     */
+    public synchronized void awaitRelease(long version) throws InterruptedException {
+        while (releases == version) {
+            wait();
+        }
+    }
+
+    /**
+     * Like {@link #awaitRelease(long)}, but gives up after the timeout
+     * @return Whether a permit was released
+     */
+    public synchronized boolean awaitRelease(long version, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (releases == version) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    /**
+     * Like {@link #awaitRelease(long)}, but gives up once the deadline passes or is cancelled
+     * @return Whether a permit was released
+     */
+    public boolean awaitRelease(long version, Deadline deadline) throws InterruptedException {
+        Runnable expiry = deadline.onExpiry(this::wakeUp);
+        try {
+            synchronized (this) {
+                while (releases == version) {
+                    if (deadline.isExpired()) {
+                        return false;
+                    }
+                    wait();
+                }
+                return true;
+            }
+        } finally {
+            expiry.run();
+        }
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    /**
+     * Number of permits currently taken
+     */
+    public synchronized int getActive() {
+        return total;
+    }
+}
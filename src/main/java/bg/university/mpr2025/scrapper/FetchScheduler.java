@@ -0,0 +1,450 @@
+package bg.university.mpr2025.scrapper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when each outbound fetch may start, so no origin gets more than its share.
+ * Every host has a token bucket, refilled at {@code ratePerHost} fetches a second up to
+ * {@code burstPerHost}, and a cap on fetches in flight; a global cap bounds the fetches in
+ * flight across all hosts. A fetch that may not start yet waits in its host's queue without
+ * holding a thread. When the global cap holds hosts back, they take turns: each waiting host
+ * starts one fetch in round-robin order, so a host with a long queue cannot starve the rest.
+ * State is striped by host: a host's queue and bucket are guarded by that host's own lock,
+ * the global count is a lock-free counter and the hosts waiting for it line up in a lock-free
+ * deque, so fetches to different hosts never contend on a shared lock.
+ */
+public final class FetchScheduler {
+    private static final FetchScheduler SHARED = new FetchScheduler(
+            Integer.getInteger("scraper.fetch.maxConcurrent", 256),
+            Integer.getInteger("scraper.fetch.maxPerHost", 8),
+            Double.parseDouble(System.getProperty("scraper.fetch.ratePerHost", "0")),
+            Integer.getInteger("scraper.fetch.burstPerHost", 0));
+
+    // Refills buckets of hosts that wait for a token; the tasks only move fetches along
+    private static final ScheduledExecutorService TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "fetch-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final int MIN_SWEEP_HOSTS = 1024;
+    private static final long DELAYED_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int maxTotal;
+    private final int maxPerHost;
+    private final double tokensPerNano;
+    private final double burst;
+    private final ConcurrentHashMap<String, HostState> hosts = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Hosts with a fetch that only the global cap holds back, in the order they get a turn
+    private final ConcurrentLinkedDeque<HostState> turns = new ConcurrentLinkedDeque<>();
+    private volatile int sweepAt = MIN_SWEEP_HOSTS;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param maxTotal Fetches in flight at once overall
+     * @param maxPerHost Fetches in flight at once to the same host
+     * @param ratePerHost Fetches started per second on each host, or 0 for no rate limit
+     * @param burstPerHost Fetches a host may start at once after being idle, or 0 for one second's worth
+     */
+    public FetchScheduler(int maxTotal, int maxPerHost, double ratePerHost, int burstPerHost) {
+        if (maxTotal < 1 || maxPerHost < 1) {
+            throw new IllegalArgumentException("Limits must be positive: " + maxTotal + ", " + maxPerHost);
+        }
+        if (ratePerHost < 0 || burstPerHost < 0) {
+            throw new IllegalArgumentException("Rate and burst must not be negative: " + ratePerHost + ", " + burstPerHost);
+        }
+        this.maxTotal = maxTotal;
+        this.maxPerHost = maxPerHost;
+        this.tokensPerNano = ratePerHost / 1e9;
+        this.burst = burstPerHost > 0 ? burstPerHost : Math.max(1, Math.ceil(ratePerHost));
+    }
+
+    /**
+     * Returns the scheduler shared by the whole process. Its limits are 256 fetches in flight,
+     * 8 per host and no rate limit; set {@code -Dscraper.fetch.maxConcurrent},
+     * {@code -Dscraper.fetch.maxPerHost}, {@code -Dscraper.fetch.ratePerHost} and
+     * {@code -Dscraper.fetch.burstPerHost} to change them.
+     */
+    public static FetchScheduler shared() {
+        return SHARED;
+    }
+
+    /**
+     * A granted fetch slot, held until the fetch is done
+     */
+    public final class Permit {
+        private final HostState host;
+        private final long waitNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(HostState host, long waitNanos) {
+            this.host = host;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * How long the fetch waited for its slot, in nanoseconds
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        /**
+         * Gives the slot back; later calls do nothing
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                FetchScheduler.this.release(host);
+            }
+        }
+    }
+
+    /**
+     * Asks for a slot to fetch from the host. Cancelling the future while it waits gives up
+     * its place in the queue.
+     * @return Future completed with the permit once the fetch may start; it must be released
+     */
+    public CompletableFuture<Permit> acquire(String host) {
+        if (hosts.size() > sweepAt) {
+            sweep();
+        }
+        Waiter waiter = new Waiter(System.nanoTime());
+        while (true) {
+            HostState state = hosts.computeIfAbsent(host, HostState::new);
+            synchronized (state) {
+                if (state.retired) {
+                    continue; // swept meanwhile, its replacement is in the map
+                }
+                state.waiting.add(waiter);
+            }
+            pump(state, false);
+            return waiter.future;
+        }
+    }
+
+    private void release(HostState host) {
+        synchronized (host) {
+            host.inFlight--;
+        }
+        inFlight.decrementAndGet();
+        pump(host, false);
+        takeTurns();
+    }
+
+    /**
+     * Starts what the host's limits allow. A host only takes a global slot past others waiting
+     * for one when it is its turn, and then takes one and goes to the back of the line.
+     */
+    private void pump(HostState host, boolean turn) {
+        List<Waiter> granted = null;
+        boolean queueForTurn = false;
+        long now = System.nanoTime();
+        synchronized (host) {
+            if (turn) {
+                host.queuedForTurn = false;
+            } else if (host.queuedForTurn) {
+                return; // its turn will come
+            }
+            for (Waiter waiter = host.waiting.peek(); waiter != null; waiter = host.waiting.peek()) {
+                if (waiter.future.isDone()) {
+                    host.waiting.poll(); // cancelled while waiting
+                    continue;
+                }
+                if (host.inFlight >= maxPerHost) {
+                    break; // a release on this host pumps it again
+                }
+                if (!host.hasToken(now)) {
+                    scheduleRefill(host);
+                    break;
+                }
+                if (!turn && !turns.isEmpty() || !tryAcquireGlobal()) {
+                    host.queuedForTurn = queueForTurn = true;
+                    break;
+                }
+                host.takeToken();
+                host.inFlight++;
+                host.waiting.poll();
+                if (granted == null) {
+                    granted = new ArrayList<>(1);
+                }
+                granted.add(waiter);
+                if (turn) {
+                    if (!host.waiting.isEmpty()) {
+                        host.queuedForTurn = queueForTurn = true;
+                    }
+                    break;
+                }
+            }
+            if (granted != null) {
+                for (Waiter waiter : granted) {
+                    host.record(now - waiter.enqueued);
+                }
+            }
+        }
+
+        if (queueForTurn) {
+            turns.addLast(host);
+        }
+        if (granted != null) {
+            for (Waiter waiter : granted) {
+                grant(host, waiter, now);
+            }
+        }
+        if (queueForTurn && !turn) {
+            takeTurns();
+        }
+    }
+
+    /**
+     * Hands free global slots to the waiting hosts, one each in turn
+     */
+    private void takeTurns() {
+        while (inFlight.get() < maxTotal) {
+            HostState host = turns.pollFirst();
+            if (host == null) {
+                return;
+            }
+            pump(host, true);
+        }
+    }
+
+    private boolean tryAcquireGlobal() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxTotal) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void grant(HostState host, Waiter waiter, long now) {
+        long waited = now - waiter.enqueued;
+        admitted.increment();
+        waitNanos.add(waited);
+        if (waited >= DELAYED_NANOS) {
+            delayed.increment();
+        }
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        Permit permit = new Permit(host, waited);
+        if (!waiter.future.complete(permit)) {
+            permit.release(); // cancelled just now
+        }
+    }
+
+    private void scheduleRefill(HostState host) {
+        if (host.refillScheduled) {
+            return;
+        }
+        host.refillScheduled = true;
+        long delayNanos = (long) Math.ceil((1 - host.tokens) / tokensPerNano);
+        TIMER.schedule(() -> {
+            synchronized (host) {
+                host.refillScheduled = false;
+            }
+            pump(host, false);
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Forgets idle hosts whose bucket is full again, which is all their state says
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        for (HostState host : hosts.values()) {
+            synchronized (host) {
+                if (host.isIdle(now)) {
+                    host.retired = true;
+                    hosts.remove(host.name, host);
+                }
+            }
+        }
+        sweepAt = Math.max(MIN_SWEEP_HOSTS, hosts.size() * 2);
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    /**
+     * Number of fetches currently in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Totals over every fetch scheduled so far
+     */
+    public Stats stats() {
+        int queued = 0;
+        for (HostState host : hosts.values()) {
+            synchronized (host) {
+                queued += host.waiting.size();
+            }
+        }
+        return new Stats(admitted.sum(), delayed.sum(), waitNanos.sum(), maxWaitNanos.get(), inFlight.get(), queued);
+    }
+
+    /**
+     * Totals for one host since it was last idle, or null if it has no recent fetches
+     */
+    public Stats stats(String host) {
+        HostState state = hosts.get(host);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            return new Stats(state.admitted, state.delayed, state.waitNanos, state.maxWaitNanos,
+                    state.inFlight, state.waiting.size());
+        }
+    }
+
+    /**
+     * How many fetches were started and how long they waited to start
+     */
+    public static final class Stats {
+        private final long admitted;
+        private final long delayed;
+        private final long waitNanos;
+        private final long maxWaitNanos;
+        private final int inFlight;
+        private final int queued;
+
+        Stats(long admitted, long delayed, long waitNanos, long maxWaitNanos, int inFlight, int queued) {
+            this.admitted = admitted;
+            this.delayed = delayed;
+            this.waitNanos = waitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.inFlight = inFlight;
+            this.queued = queued;
+        }
+
+        /**
+         * Fetches started
+         */
+        public long getAdmitted() {
+            return admitted;
+        }
+
+        /**
+         * Fetches that waited a millisecond or more to start
+         */
+        public long getDelayed() {
+            return delayed;
+        }
+
+        public long getTotalWaitNanos() {
+            return waitNanos;
+        }
+
+        public double getMeanWaitMs() {
+            return admitted == 0 ? 0 : waitNanos / 1e6 / admitted;
+        }
+
+        public double getMaxWaitMs() {
+            return maxWaitNanos / 1e6;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * Fetches waiting to start
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("admitted=%d delayed=%d meanWaitMs=%.2f maxWaitMs=%.2f inFlight=%d queued=%d",
+                    admitted, delayed, getMeanWaitMs(), getMaxWaitMs(), inFlight, queued);
+        }
+    }
+
+    private static final class Waiter {
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        private final long enqueued;
+
+        Waiter(long enqueued) {
+            this.enqueued = enqueued;
+        }
+    }
+
+    /**
+     * One host's queue, bucket and counters, guarded by the object's own lock
+     */
+    private final class HostState {
+        private final String name;
+        private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+        private int inFlight;
+        private double tokens = burst;
+        private long refilledAt = System.nanoTime();
+        private boolean refillScheduled;
+        private boolean queuedForTurn;
+        private boolean retired;
+
+        private long admitted;
+        private long delayed;
+        private long waitNanos;
+        private long maxWaitNanos;
+
+        HostState(String name) {
+            this.name = name;
+        }
+
+        boolean hasToken(long now) {
+            if (tokensPerNano == 0) {
+                return true;
+            }
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            return tokens >= 1;
+        }
+
+        void takeToken() {
+            if (tokensPerNano != 0) {
+                tokens -= 1;
+            }
+        }
+
+        void record(long waited) {
+            admitted++;
+            waitNanos += waited;
+            if (waited >= DELAYED_NANOS) {
+                delayed++;
+            }
+            maxWaitNanos = Math.max(maxWaitNanos, waited);
+        }
+
+        boolean isIdle(long now) {
+            return inFlight == 0 && waiting.isEmpty() && !queuedForTurn && !refillScheduled
+                    && (tokensPerNano == 0 || hasToken(now) && tokens >= burst);
+        }
+    }
+}
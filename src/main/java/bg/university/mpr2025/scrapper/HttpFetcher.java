@@ -0,0 +1,604 @@
+package bg.university.mpr2025.scrapper;
+
+import bg.university.mpr2025.utils.Metrics;
+import bg.university.mpr2025.utils.VirtualThreads;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * Process-wide HTTP fetch layer used by the scrapers.
+ * One {@link HttpClient} is shared by every server and scraper in the process,
+ * so connections are pooled per host, kept alive between requests and upgraded
+ * to HTTP/2 whenever the origin offers it.
+ * Every fetch first waits for a slot from the {@link FetchScheduler}, which keeps the
+ * fetches to each origin within its rate and concurrency limits.
+ * Fetches given a {@link Deadline} are aborted once it expires, wherever they are.
+ * Download and parse times and the bytes received are recorded in {@link Metrics}.
+ */
+public class HttpFetcher {
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+
+    private static final HttpFetcher SHARED = new HttpFetcher();
+
+    private final HttpClient client;
+    private final FetchScheduler scheduler;
+
+    public HttpFetcher() {
+        this(Boolean.getBoolean("scraper.virtualThreads"));
+    }
+
+    /**
+     * @param virtualThreads Run response handling on virtual threads instead of the client's default pool
+     */
+    public HttpFetcher(boolean virtualThreads) {
+        this(newClientBuilder(virtualThreads).build());
+    }
+
+    public HttpFetcher(HttpClient client) {
+        this(client, FetchScheduler.shared());
+    }
+
+    public HttpFetcher(HttpClient client, FetchScheduler scheduler) {
+        this.client = client;
+        this.scheduler = scheduler;
+    }
+
+    private static HttpClient.Builder newClientBuilder(boolean virtualThreads) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT);
+        if (virtualThreads) {
+            builder.executor(VirtualThreads.newThreadPerTaskExecutor("http-fetcher"));
+        }
+        return builder;
+    }
+
+    /**
+     * Returns the fetcher shared by the whole process.
+     * Set {@code -Dscraper.virtualThreads=true} to run it in virtual-thread mode.
+     */
+    public static HttpFetcher shared() {
+        return SHARED;
+    }
+
+    public FetchScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Starts a non-blocking fetch of the given URL
+     * @param url The URL to fetch
+     * @return Future completed with the downloaded page, or exceptionally on network or HTTP errors
+     */
+    public CompletableFuture<FetchedPage> fetchAsync(String url) {
+        return fetchAsync(url, null, null);
+    }
+
+    /**
+     * Starts a conditional fetch that revalidates a previously downloaded copy.
+     * When the origin answers 304 the returned page has no body and
+     * {@link FetchedPage#isNotModified()} is true.
+     * @param etag ETag of the cached copy, or null
+     * @param lastModified Last-Modified value of the cached copy, or null
+     */
+    public CompletableFuture<FetchedPage> fetchAsync(String url, String etag, String lastModified) {
+        return fetchAsync(url, etag, lastModified, Deadline.none());
+    }
+
+    /**
+     * Like {@link #fetchAsync(String)}, but given up once the deadline passes or is cancelled
+     */
+    public CompletableFuture<FetchedPage> fetchAsync(String url, Deadline deadline) {
+        return fetchAsync(url, null, null, deadline);
+    }
+
+    /**
+     * Like {@link #fetchAsync(String, String, String)}, but given up once the deadline passes
+     * or is cancelled: the future then fails with a {@link DeadlineExceededException}, a fetch
+     * still waiting for its slot leaves the queue and one under way is aborted, freeing its
+     * connection and slot. Cancelling the future does the same.
+     */
+    public CompletableFuture<FetchedPage> fetchAsync(String url, String etag, String lastModified, Deadline deadline) {
+        if (deadline.isExpired()) {
+            return CompletableFuture.failedFuture(deadline.exceeded());
+        }
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = newRequest(url).timeout(timeoutOf(deadline));
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new IOException("Malformed URL: " + url, e));
+        }
+        boolean conditional = etag != null || lastModified != null;
+
+        CompletableFuture<FetchedPage> page = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> exchange = new AtomicReference<>();
+        AtomicReference<FetchScheduler.Permit> granted = new AtomicReference<>();
+        CompletableFuture<FetchScheduler.Permit> slot = scheduler.acquire(hostOf(request));
+        slot.thenCompose(permit -> {
+                    granted.set(permit);
+                    CompletableFuture<HttpResponse<byte[]>> sent = send(request, HttpResponse.BodyHandlers.ofByteArray(), permit);
+                    exchange.set(sent);
+                    if (page.isDone()) {
+                        // Given up just as the slot was granted
+                        sent.cancel(true);
+                        permit.release();
+                    }
+                    return sent;
+                })
+                .thenApply(response -> {
+                    int status = response.statusCode();
+                    boolean notModified = conditional && status == 304;
+                    if (!notModified && (status < 200 || status >= 300)) {
+                        throw new CompletionException(new IOException(
+                                "HTTP error fetching URL. Status=" + status + ", URL=" + url));
+                    }
+                    Metrics.shared().add(Metrics.Counter.BYTES_FETCHED, response.body().length);
+                    return new FetchedPage(response);
+                })
+                .whenComplete((fetched, e) -> {
+                    if (e == null) {
+                        page.complete(fetched);
+                    } else {
+                        page.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    }
+                });
+        Runnable expiry = deadline.onExpiry(() -> page.completeExceptionally(deadline.exceeded()));
+        // A fetch given up while it waits for its slot leaves the queue; one under way is aborted
+        page.whenComplete((p, e) -> {
+            expiry.run();
+            if (e != null) {
+                slot.cancel(false);
+                CompletableFuture<?> sent = exchange.get();
+                if (sent != null) {
+                    sent.cancel(true);
+                }
+                FetchScheduler.Permit permit = granted.get();
+                if (permit != null) {
+                    permit.release();
+                }
+            }
+        });
+        return page;
+    }
+
+    /**
+     * The request timeout, shortened to the time the deadline leaves
+     */
+    private static Duration timeoutOf(Deadline deadline) {
+        long remainingMs = deadline.remainingMs();
+        return remainingMs < REQUEST_TIMEOUT.toMillis() ? Duration.ofMillis(Math.max(1, remainingMs)) : REQUEST_TIMEOUT;
+    }
+
+    /**
+     * Sends the request on a granted slot, which is given back once the response has been received,
+     * and records how long that took.
+     * @return The client's own future, so that cancelling it aborts the exchange; a dependent
+     * future would only be cancelled itself
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                        FetchScheduler.Permit permit) {
+        long sentAt = System.nanoTime();
+        try {
+            CompletableFuture<HttpResponse<T>> sent = client.sendAsync(request, handler);
+            sent.whenComplete((response, e) -> {
+                permit.release();
+                if (response != null) {
+                    Metrics.shared().recordSince(Metrics.Phase.FETCH, sentAt);
+                }
+            });
+            return sent;
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    private static String hostOf(HttpRequest request) {
+        String host = request.uri().getHost();
+        return host == null ? "" : host.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Fetches the given URL, blocking until the whole body has been received
+     */
+    public FetchedPage fetch(String url) throws IOException {
+        return await(fetchAsync(url));
+    }
+
+    /**
+     * Fetches the given URL and hands the body to Jsoup for parsing
+     */
+    public Document fetchDocument(String url) throws IOException {
+        return fetch(url).parse();
+    }
+
+    /**
+     * Starts downloading the given URL and returns as soon as the headers have arrived,
+     * so the body can be parsed while it is still being received.
+     * Closing the stream before the end abandons the rest of the body and its connection.
+     */
+    public PageStream open(String url) throws IOException {
+        return open(url, Deadline.none());
+    }
+
+    /**
+     * Like {@link #open(String)}, but given up once the deadline passes or is cancelled.
+     * The stream is then closed under its reader, whose next read fails.
+     */
+    public PageStream open(String url, Deadline deadline) throws IOException {
+        deadline.check();
+        HttpRequest request;
+        try {
+            request = newRequest(url).timeout(timeoutOf(deadline)).build();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed URL: " + url, e);
+        }
+
+        // The slot is held until the stream is closed, as the body arrives while it is read
+        CompletableFuture<FetchScheduler.Permit> slot = scheduler.acquire(hostOf(request));
+        FetchScheduler.Permit permit;
+        try {
+            permit = await(slot, deadline);
+        } catch (IOException e) {
+            slot.cancel(false);
+            slot.thenAccept(FetchScheduler.Permit::release); // granted just as the wait was given up
+            throw e;
+        }
+        try {
+            CompletableFuture<HttpResponse<InputStream>> sent = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+            HttpResponse<InputStream> response;
+            try {
+                response = await(sent, deadline);
+            } catch (IOException e) {
+                sent.cancel(true);
+                throw e;
+            }
+            int status = response.statusCode();
+            if (status < 200 || status >= 300) {
+                response.body().close();
+                throw new IOException("HTTP error fetching URL. Status=" + status + ", URL=" + url);
+            }
+            InputStream body = response.body();
+            Runnable expiry = deadline.onExpiry(() -> {
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    // The reader fails either way
+                }
+            });
+            return new PageStream(response.uri().toString(),
+                    FetchedPage.charsetOf(response.headers().firstValue("Content-Type").orElse(null)),
+                    response.headers().firstValueAsLong("Content-Length").orElse(-1),
+                    body, bytesRead -> {
+                        expiry.run();
+                        permit.release();
+                        Metrics.shared().add(Metrics.Counter.BYTES_FETCHED, bytesRead);
+                    });
+        } catch (IOException | RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    HttpRequest.Builder newRequest(String url) {
+        URI uri = URI.create(url);
+        return HttpRequest.newBuilder(uri)
+                // HTTP/2 is negotiated through ALPN on TLS; over plain http an h2c upgrade
+                // attempt on every request costs more than it saves, so stay on HTTP/1.1
+                .version("https".equalsIgnoreCase(uri.getScheme()) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .timeout(REQUEST_TIMEOUT)
+                .header("User-Agent", USER_AGENT)
+                .GET();
+    }
+
+    /**
+     * Waits for the future until the deadline passes or is cancelled, without cancelling the
+     * future itself, which may be shared; callers owning it cancel it when this throws
+     * @throws DeadlineExceededException If the deadline expired first
+     */
+    static <T> T await(CompletableFuture<T> future, Deadline deadline) throws IOException {
+        if (future.isDone()) {
+            return await(future);
+        }
+        deadline.check();
+        CompletableFuture<T> view = future.copy();
+        Runnable expiry = deadline.onExpiry(() -> view.completeExceptionally(deadline.exceeded()));
+        try {
+            return await(view);
+        } finally {
+            expiry.run();
+        }
+    }
+
+    static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fetch interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * A downloaded page: final URL after redirects, status, validators and raw body
+     */
+    public static class FetchedPage {
+        private final String url;
+        private final int statusCode;
+        private final String charset;
+        private final String etag;
+        private final String lastModified;
+        private final byte[] body;
+
+        FetchedPage(HttpResponse<byte[]> response) {
+            this.url = response.uri().toString();
+            this.statusCode = response.statusCode();
+            this.charset = charsetOf(response.headers().firstValue("Content-Type").orElse(null));
+            this.etag = response.headers().firstValue("ETag").orElse(null);
+            this.lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            this.body = response.body();
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public boolean isNotModified() {
+            return statusCode == 304;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Parses the body with Jsoup. When the response carried no charset,
+         * Jsoup detects it from the page's meta tags like {@code Jsoup.connect} does.
+         */
+        public Document parse() throws IOException {
+            long start = System.nanoTime();
+            Document doc = Jsoup.parse(new ByteArrayInputStream(body), charset, url);
+            Metrics.shared().recordSince(Metrics.Phase.PARSE, start);
+            return doc;
+        }
+
+        /**
+         * Like {@link #parse()}, but stops once the deadline expires. The parser takes the body
+         * in chunks of a few kilobytes as it goes, and the deadline is checked before each.
+         * @throws DeadlineExceededException If the deadline expired before the page was parsed
+         */
+        public Document parse(Deadline deadline) throws IOException {
+            InputStream in = new FilterInputStream(new ByteArrayInputStream(body)) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    deadline.check();
+                    return super.read(b, off, len);
+                }
+            };
+            long start = System.nanoTime();
+            try {
+                Document doc = Jsoup.parse(in, charset, url);
+                Metrics.shared().recordSince(Metrics.Phase.PARSE, start);
+                return doc;
+            } catch (UncheckedIOException e) {
+                // The parser wraps failures of the reads it makes once parsing has begun
+                if (e.getCause() instanceof DeadlineExceededException) {
+                    throw (DeadlineExceededException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Reads the already downloaded body through the same interface as {@link HttpFetcher#open}
+         */
+        public PageStream openStream() {
+            return new PageStream(url, charset, body.length, new ByteArrayInputStream(body), bytesRead -> { });
+        }
+
+        private static String charsetOf(String contentType) {
+            if (contentType == null) {
+                return null;
+            }
+            for (String part : contentType.split(";")) {
+                String p = part.trim();
+                if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+                    return p.substring(8).replace("\"", "").trim();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A page body that is read as it arrives, counting the bytes taken from the connection
+     */
+    public static class PageStream implements Closeable {
+        // How far into the body a <meta charset> declaration is looked for
+        private static final int CHARSET_SNIFF_BYTES = 1024;
+
+        private final String url;
+        private final String charset;
+        private final long contentLength;
+        private final CountingInputStream body;
+        // Receives the number of bytes read
+        private final LongConsumer onClose;
+
+        PageStream(String url, String charset, long contentLength, InputStream body, LongConsumer onClose) {
+            this.url = url;
+            this.charset = charset;
+            this.contentLength = contentLength;
+            this.body = new CountingInputStream(body);
+            this.onClose = onClose;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Length announced by the origin, or -1 if the body is sent without one
+         */
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        public long getBytesRead() {
+            return body.count;
+        }
+
+        /**
+         * Bytes of the body that were never read, or -1 if the length is unknown
+         */
+        public long getBytesSkipped() {
+            return contentLength < 0 ? -1 : Math.max(0, contentLength - body.count);
+        }
+
+        /**
+         * Decodes the body with the charset from the response headers, else the one
+         * declared by a meta tag near the start of the page, else UTF-8
+         */
+        public Reader reader() throws IOException {
+            InputStream in = new BufferedInputStream(body);
+            Charset decoder = forName(charset);
+            if (decoder == null) {
+                in.mark(CHARSET_SNIFF_BYTES);
+                byte[] head = in.readNBytes(CHARSET_SNIFF_BYTES);
+                in.reset();
+                decoder = forName(metaCharsetOf(new String(head, StandardCharsets.ISO_8859_1)));
+            }
+            return new InputStreamReader(in, decoder == null ? StandardCharsets.UTF_8 : decoder);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                body.close();
+            } finally {
+                onClose.accept(body.count);
+            }
+        }
+
+        private static String metaCharsetOf(String head) {
+            String lower = head.toLowerCase(Locale.ENGLISH);
+            int meta = lower.indexOf("<meta");
+            while (meta >= 0) {
+                int end = lower.indexOf('>', meta);
+                if (end < 0) {
+                    return null;
+                }
+                int at = lower.indexOf("charset=", meta);
+                if (at >= 0 && at < end) {
+                    int from = at + 8;
+                    while (from < end && (lower.charAt(from) == '"' || lower.charAt(from) == '\'')) {
+                        from++;
+                    }
+                    int to = from;
+                    while (to < end && "\"' ;/".indexOf(lower.charAt(to)) < 0) {
+                        to++;
+                    }
+                    return lower.substring(from, to);
+                }
+                meta = lower.indexOf("<meta", end);
+            }
+            return null;
+        }
+
+        private static Charset forName(String name) {
+            if (name == null || name.isEmpty()) {
+                return null;
+            }
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                return null; // unknown or malformed charset name
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
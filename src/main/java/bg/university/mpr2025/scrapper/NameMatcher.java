@@ -0,0 +1,69 @@
+package bg.university.mpr2025.scrapper;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Finds any of a fixed set of ASCII names inside a string, ignoring case.
+ * The names are grouped by their first character, so the string is scanned once,
+ * and plain ASCII input is matched in place without a lower-cased copy.
+ */
+final class NameMatcher {
+    private final String[][] namesByFirstChar = new String[128][];
+
+    /**
+     * @throws IllegalArgumentException If a name is empty or not ASCII
+     */
+    NameMatcher(Collection<String> names) {
+        for (String name : names) {
+            String lower = name.toLowerCase(Locale.ENGLISH);
+            if (lower.isEmpty() || !isAscii(lower)) {
+                throw new IllegalArgumentException("Names must be non-empty ASCII: " + name);
+            }
+            char first = lower.charAt(0);
+            String[] existing = namesByFirstChar[first];
+            String[] updated = existing == null ? new String[1] : Arrays.copyOf(existing, existing.length + 1);
+            updated[updated.length - 1] = lower;
+            namesByFirstChar[first] = updated;
+        }
+    }
+
+    /**
+     * Whether the lower-cased text contains one of the names
+     */
+    boolean isContainedIn(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        // Case-insensitive region matching equals lower-casing only for plain ASCII
+        boolean ascii = isAscii(text);
+        String haystack = ascii ? text : text.toLowerCase(Locale.ENGLISH);
+
+        for (int i = 0; i < haystack.length(); i++) {
+            char c = haystack.charAt(i);
+            if (c >= 128) {
+                continue;
+            }
+            String[] candidates = namesByFirstChar[c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c];
+            if (candidates == null) {
+                continue;
+            }
+            for (String candidate : candidates) {
+                if (haystack.regionMatches(ascii, i, candidate, 0, candidate.length())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,273 @@
+package bg.university.mpr2025.scrapper;
+
+import bg.university.mpr2025.scrapper.HttpFetcher.FetchedPage;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of downloaded pages keyed by URL.
+ * Entries are fresh for a fixed TTL; stale entries are revalidated with
+ * If-None-Match / If-Modified-Since so an unchanged page costs a 304 instead of
+ * a full download. Concurrent misses for one URL share a single download, which each of
+ * them waits for no longer than its own {@link Deadline}; once none of them waits any more,
+ * the download is aborted.
+ * The cache is bounded by total body bytes and evicts the least recently used
+ * pages first.
+ */
+public class PageCache {
+    // Distinct profile and row limit combinations remembered per page; clients normally use only a few
+    private static final int MAX_ROW_LIMITS = 8;
+
+    private final HttpFetcher fetcher;
+    private final long ttlMs;
+    private final long maxBytes;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+    private final ConcurrentHashMap<String, Load> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PageCache(HttpFetcher fetcher, long ttlMs, long maxBytes) {
+        this.fetcher = fetcher;
+        this.ttlMs = ttlMs;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the page for the given URL, downloading or revalidating it if needed
+     */
+    public Entry fetch(String url) throws IOException {
+        return fetch(url, Deadline.none());
+    }
+
+    /**
+     * Like {@link #fetch(String)}, but stops waiting once the deadline passes or is cancelled.
+     * The download goes on while other requests still wait for the same page, and is aborted
+     * when the last of them gives up.
+     */
+    public Entry fetch(String url, Deadline deadline) throws IOException {
+        Entry cached = get(url);
+        long now = System.currentTimeMillis();
+
+        if (cached != null && now - cached.storedAt < ttlMs) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        // Concurrent misses for the same URL share one download
+        Load load = new Load();
+        Load existing;
+        while ((existing = loading.putIfAbsent(url, load)) != null) {
+            if (existing.join()) {
+                return existing.await(deadline);
+            }
+            loading.remove(url, existing); // abandoned by its last waiter just now
+        }
+        CompletableFuture<FetchedPage> fetch = cached == null
+                ? fetcher.fetchAsync(url)
+                : fetcher.fetchAsync(url, cached.page.getEtag(), cached.page.getLastModified());
+        load.fetch = fetch;
+        fetch.thenApply(page -> store(url, cached, page, now)).whenComplete((entry, e) -> {
+            if (e == null) {
+                load.entry.complete(entry);
+            } else {
+                load.entry.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+            loading.remove(url, load);
+        });
+        return load.await(deadline);
+    }
+
+    /**
+     * Returns the page if a fresh copy is cached, without downloading or revalidating anything
+     */
+    public Entry getIfFresh(String url) {
+        Entry cached = get(url);
+        if (cached != null && System.currentTimeMillis() - cached.storedAt < ttlMs) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        return null;
+    }
+
+    private Entry store(String url, Entry cached, FetchedPage page, long now) {
+        if (cached != null && page.isNotModified()) {
+            revalidations.incrementAndGet();
+            Entry refreshed = new Entry(cached.page, cached.rows, now);
+            put(url, refreshed);
+            return refreshed;
+        }
+        misses.incrementAndGet();
+        Entry entry = new Entry(page, new ConcurrentHashMap<>(), now);
+        put(url, entry);
+        return entry;
+    }
+
+    private synchronized Entry get(String url) {
+        return entries.get(url);
+    }
+
+    private synchronized void put(String url, Entry entry) {
+        long size = entry.page.getBody().length;
+        if (size > maxBytes) {
+            return;
+        }
+
+        Entry previous = entries.put(url, entry);
+        if (previous != null) {
+            sizeBytes -= previous.page.getBody().length;
+        }
+        sizeBytes += size;
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (sizeBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            sizeBytes -= eldest.getValue().page.getBody().length;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long sizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PageCache{entries=" + size() + ", bytes=" + sizeBytes() + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", revalidations=" + getRevalidations()
+                + ", evictions=" + getEvictions() + "}";
+    }
+
+    /**
+     * A cached page together with the rows already extracted from it, keyed by profile and row limit
+     */
+    public static class Entry {
+        private final FetchedPage page;
+        private final Map<RowsKey, List<String>> rows;
+        private final long storedAt;
+
+        Entry(FetchedPage page, Map<RowsKey, List<String>> rows, long storedAt) {
+            this.page = page;
+            this.rows = rows;
+            this.storedAt = storedAt;
+        }
+
+        public FetchedPage getPage() {
+            return page;
+        }
+
+        /**
+         * Rows previously extracted with the given profile and limit, or null.
+         * A reloaded profile is a new object, so rows of its previous version are not returned.
+         */
+        public List<String> getRows(ExtractionProfile profile, int rowsLimit) {
+            return rows.get(new RowsKey(profile, rowsLimit));
+        }
+
+        public void putRows(ExtractionProfile profile, int rowsLimit, List<String> results) {
+            RowsKey key = new RowsKey(profile, rowsLimit);
+            if (rows.size() < MAX_ROW_LIMITS || rows.containsKey(key)) {
+                rows.put(key, List.copyOf(results));
+            }
+        }
+    }
+
+    /**
+     * A download shared by the requests waiting for it, aborted once none of them waits any more
+     */
+    private static final class Load {
+        private final CompletableFuture<Entry> entry = new CompletableFuture<>();
+        // Set by the request starting the download, which waits for it as long as any other
+        private volatile CompletableFuture<FetchedPage> fetch;
+        // Guarded by this
+        private int waiters = 1;
+        private boolean abandoned;
+
+        /**
+         * @return False if the download was abandoned and must not be waited for
+         */
+        synchronized boolean join() {
+            if (abandoned) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        Entry await(Deadline deadline) throws IOException {
+            try {
+                return HttpFetcher.await(entry, deadline);
+            } finally {
+                leave();
+            }
+        }
+
+        private void leave() {
+            synchronized (this) {
+                if (--waiters > 0 || entry.isDone()) {
+                    return;
+                }
+                abandoned = true;
+            }
+            fetch.cancel(true);
+        }
+    }
+
+    private static final class RowsKey {
+        private final ExtractionProfile profile;
+        private final int rowsLimit;
+
+        RowsKey(ExtractionProfile profile, int rowsLimit) {
+            this.profile = profile;
+            this.rowsLimit = rowsLimit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RowsKey)) {
+                return false;
+            }
+            RowsKey other = (RowsKey) o;
+            return profile == other.profile && rowsLimit == other.rowsLimit;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(profile) + rowsLimit;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package bg.university.mpr2025.scrapper;
+
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Turns content elements into rows on a fork/join pool.
+ * The elements are cut into contiguous leaves sized from the measured cost of one element,
+ * so that every leaf is worth about 100 microseconds of work. When the elements needed for
+ * the row limit, judged by the measured share of elements that yield a row, take less than
+ * two leaves, they are processed on the calling thread without creating any task; larger
+ * amounts are taken leaf by leaf, in element order, by as many pool workers as the request's
+ * thread count allows, capped by the pool's parallelism.
+ * Rows reach the sink on the calling thread and in element order, leaf by leaf as each one is
+ * done. Once the row limit is reached, leaves still queued or running stop at their next element.
+ * An optional filter sees the rows on the calling thread, in element order, before they count
+ * toward the limit, so order-dependent filtering such as dropping duplicates stays deterministic.
+ * A {@link Deadline} stops the leaves the same way; the caller then gets the rows of the
+ * elements done before the first one left out.
+ */
+public final class ParallelExtractor {
+    // Work per leaf: well above the cost of handing it to a worker, small enough to balance
+    private static final long LEAF_NANOS = 100_000;
+    private static final long INITIAL_COST_NANOS = 2_000;
+    private static final long INITIAL_ROWS_PER_1000 = 500;
+    // Fewer elements than this say more about the clock than about the elements
+    private static final int MIN_SAMPLE = 16;
+    // CPU time rather than wall time, so leaves that were preempted do not inflate the estimate
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private static final ParallelExtractor SHARED = new ParallelExtractor(ScraperExecutor.pool());
+
+    private final ForkJoinPool pool;
+    // Moving averages of the time one element takes and of how many elements in 1000 yield a row;
+    // updated without locking, races only blur them
+    private volatile long costNanos = INITIAL_COST_NANOS;
+    private volatile long rowsPer1000 = INITIAL_ROWS_PER_1000;
+
+    public ParallelExtractor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * The extractor running on the shared scraper pool
+     */
+    public static ParallelExtractor shared() {
+        return SHARED;
+    }
+
+    /**
+     * Processes the elements and pushes the accepted rows to the sink in element order
+     * @param rowOf Returns the row for an element, or null to skip it; called from pool threads
+     * @param threads Most pool threads working on the elements at once; 1 keeps all work on
+     * the calling thread
+     * @param rowsLimit Maximum number of rows, or 0 for all
+     * @return Number of rows pushed to the sink
+     */
+    public int extract(List<Element> elements, Function<Element, String> rowOf, int threads, int rowsLimit,
+                       RowSink sink) throws InterruptedException, ExecutionException, IOException {
+        return extract(elements, rowOf, threads, rowsLimit, null, sink);
+    }
+
+    /**
+     * Like {@link #extract(List, Function, int, int, RowSink)}, but only rows the filter keeps
+     * reach the sink and count toward the limit
+     * @param keep Called on the calling thread in element order, or null to keep every row
+     */
+    public int extract(List<Element> elements, Function<Element, String> rowOf, int threads, int rowsLimit,
+                       Predicate<String> keep, RowSink sink) throws InterruptedException, ExecutionException, IOException {
+        return extract(elements, rowOf, threads, rowsLimit, keep, null, sink);
+    }
+
+    /**
+     * Like {@link #extract(List, Function, int, int, Predicate, RowSink)}, but stopped once
+     * the deadline expires: leaves stop at their next element and the rows of the elements
+     * processed up to the first unfinished one reach the sink before this throws
+     * @param deadline The deadline, or null for none
+     * @throws DeadlineExceededException If the deadline expired before the row limit or the
+     * last element was reached
+     */
+    public int extract(List<Element> elements, Function<Element, String> rowOf, int threads, int rowsLimit,
+                       Predicate<String> keep, Deadline deadline, RowSink sink)
+            throws InterruptedException, ExecutionException, IOException {
+        if (elements.isEmpty()) {
+            return 0;
+        }
+
+        int leafSize = leafSize(elements.size(), threads, rowsLimit);
+        // With a filter, a leaf cannot know how many of its rows will be kept
+        Run run = new Run(elements, rowOf, leafSize, keep == null ? rowsLimit : 0);
+        Runnable expiry = deadline == null ? null : deadline.onExpiry(run::expire);
+        try {
+            if (run.leaves == 1) {
+                int count = emit(run.process(0), 0, rowsLimit, keep, sink);
+                if (run.truncated && (rowsLimit <= 0 || count < rowsLimit)) {
+                    throw deadline.exceeded();
+                }
+                return count;
+            }
+
+            int workers = Math.min(run.leaves, Math.min(threads, pool.getParallelism()));
+            for (int i = 0; i < workers; i++) {
+                pool.execute(run::drain);
+            }
+            int count = 0;
+            for (int leaf = 0; leaf < run.leaves && (rowsLimit <= 0 || count < rowsLimit); leaf++) {
+                List<String> rows = run.await(leaf);
+                if (rows == null) {
+                    throw deadline.exceeded();
+                }
+                count = emit(rows, count, rowsLimit, keep, sink);
+                if (run.truncated && (rowsLimit <= 0 || count < rowsLimit)) {
+                    // Leaves after a cut one would leave a gap in element order
+                    throw deadline.exceeded();
+                }
+            }
+            return count;
+        } finally {
+            // Nothing after this point is needed any more
+            run.cancelled = true;
+            if (expiry != null) {
+                expiry.run();
+            }
+        }
+    }
+
+    /**
+     * Current estimate of the time one element takes, in nanoseconds
+     */
+    public long getCostNanos() {
+        return costNanos;
+    }
+
+    /**
+     * Current estimate of the share of elements that yield a row, in rows per 1000 elements
+     */
+    public long getRowsPer1000() {
+        return rowsPer1000;
+    }
+
+    private int leafSize(int elements, int threads, int rowsLimit) {
+        if (Math.min(threads, pool.getParallelism()) <= 1) {
+            return elements;
+        }
+        long needed = elements;
+        if (rowsLimit > 0) {
+            // Half as many again as the estimate, so a slightly optimistic one still stays inline
+            needed = Math.min(elements, rowsLimit * 1500L / Math.max(1, rowsPer1000));
+        }
+        long perLeaf = Math.max(1, LEAF_NANOS / Math.max(1, costNanos));
+        // Splitting off less than two leaves' worth of work costs more than it saves
+        return perLeaf * 2 > needed ? elements : (int) perLeaf;
+    }
+
+    private static long now() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private void record(long nanos, int elements, int rows) {
+        if (elements >= MIN_SAMPLE) {
+            long cost = costNanos;
+            costNanos = cost + (nanos / elements - cost) / 8;
+            long share = rowsPer1000;
+            rowsPer1000 = share + (rows * 1000L / elements - share) / 8;
+        }
+    }
+
+    private static int emit(List<String> rows, int count, int rowsLimit, Predicate<String> keep, RowSink sink)
+            throws IOException {
+        for (String row : rows) {
+            if (rowsLimit > 0 && count >= rowsLimit) {
+                break;
+            }
+            if (keep != null && !keep.test(row)) {
+                continue;
+            }
+            sink.accept(row);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * One call to {@link #extract}: its leaves, their results and the cancellation flag
+     */
+    private final class Run {
+        private final List<Element> elements;
+        private final Function<Element, String> rowOf;
+        private final int leafSize;
+        private final int leaves;
+        private final int rowsLimit;
+        private final List<List<String>> results;
+        private final AtomicInteger nextLeaf = new AtomicInteger();
+        private RuntimeException failure;
+        private volatile boolean cancelled;
+        // Set, before cancelled, once the deadline expired; a leaf cut short by it marks its rows
+        private volatile boolean expired;
+        private volatile boolean truncated;
+
+        Run(List<Element> elements, Function<Element, String> rowOf, int leafSize, int rowsLimit) {
+            this.elements = elements;
+            this.rowOf = rowOf;
+            this.leafSize = leafSize;
+            this.leaves = (elements.size() + leafSize - 1) / leafSize;
+            this.rowsLimit = rowsLimit;
+            this.results = new ArrayList<>(Collections.nCopies(leaves, null));
+        }
+
+        List<String> process(int leaf) {
+            int from = leaf * leafSize;
+            int to = Math.min(from + leafSize, elements.size());
+            List<String> rows = new ArrayList<>();
+            long start = now();
+            int done = 0;
+            for (int i = from; i < to; i++) {
+                if (cancelled) {
+                    truncated |= expired;
+                    break;
+                }
+                String row = rowOf.apply(elements.get(i));
+                done++;
+                if (row != null) {
+                    rows.add(row);
+                    // No later element of this leaf can make it into the response
+                    if (rowsLimit > 0 && rows.size() >= rowsLimit) {
+                        break;
+                    }
+                }
+            }
+            record(now() - start, done, rows.size());
+            return rows;
+        }
+
+        /**
+         * Runs the next leaf not yet taken until none is left, so the leaves the caller waits
+         * for earliest are also started earliest
+         */
+        void drain() {
+            int leaf;
+            while (!cancelled && (leaf = nextLeaf.getAndIncrement()) < leaves) {
+                run(leaf);
+            }
+        }
+
+        void run(int leaf) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                List<String> rows = process(leaf);
+                synchronized (this) {
+                    results.set(leaf, rows);
+                    notifyAll();
+                }
+            } catch (RuntimeException e) {
+                cancelled = true;
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Stops every leaf at its next element and wakes the caller
+         */
+        synchronized void expire() {
+            expired = true;
+            cancelled = true;
+            notifyAll();
+        }
+
+        /**
+         * @return The leaf's rows, or null if the deadline expired before it was done
+         */
+        synchronized List<String> await(int leaf) throws InterruptedException, ExecutionException {
+            while (results.get(leaf) == null && failure == null) {
+                if (expired) {
+                    return null;
+                }
+                wait();
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return results.get(leaf);
+        }
+    }
+}
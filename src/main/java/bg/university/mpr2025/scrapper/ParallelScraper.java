@@ -1,30 +1,37 @@
 package bg.university.mpr2025.scrapper;
 
-import org.jsoup.Jsoup;
+import bg.university.mpr2025.utils.Metrics;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.function.Predicate;
 
 public class ParallelScraper {
     
-    private static final Set<String> CONTENT_SELECTORS = new HashSet<>(Arrays.asList(
-        "h2.post-block__title a",  // Article titles
-        "div.post-block__content", // Article excerpts
-        "a.post-block__title__link" // Article links
-    ));
+    private static final String NO_CONTENT = "No content found. The website structure might have changed.";
     
-    private static final Set<String> IGNORED_ELEMENTS = new HashSet<>(Arrays.asList(
-        "script", "style", "noscript", "iframe", "object", "embed",
-        "nav", "footer", "header", "aside", "form", "button"
-    ));
+    private final HttpFetcher fetcher;
+    private final ParallelExtractor extractor;
     
-    private static final Set<String> IGNORED_CLASSES = new HashSet<>(Arrays.asList(
-        "menu", "advertisement", "social", "share", "related", "popular", "trending",
-        "newsletter", "subscribe", "cookie", "privacy", "modal", "overlay", "banner"
-    ));
+    public ParallelScraper() {
+        this(HttpFetcher.shared());
+    }
+    
+    public ParallelScraper(HttpFetcher fetcher) {
+        this(fetcher, ParallelExtractor.shared());
+    }
+    
+    public ParallelScraper(HttpFetcher fetcher, ParallelExtractor extractor) {
+        this.fetcher = fetcher;
+        this.extractor = extractor;
+    }
     
     /**
      * Scrapes a website and returns a list of results
@@ -34,148 +41,224 @@ public class ParallelScraper {
      * @return List of scraped results
      */
     public List<String> scrape(String url, int threads, int rowsLimit) throws Exception {
-        long startTime = System.currentTimeMillis();
-        
         try {
-            Document doc = Jsoup.connect(url)
-                    .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36")
-                    .timeout(15000)
-                    .followRedirects(true)
-                    .get();
-            
-            cleanDocument(doc);
-            
-            Elements contentElements = new Elements();
-            for (String selector : CONTENT_SELECTORS) {
-                contentElements.addAll(doc.select(selector));
-            }
-            
-            List<String> results = processElementsInParallel(contentElements, threads, rowsLimit);
+            Document doc = fetcher.fetchDocument(url);
             
-            if (results.isEmpty()) {
-                results.add("No content found. The website structure might have changed.");
-            } else if (rowsLimit > 0 && results.size() > rowsLimit) {
-                return results.subList(0, rowsLimit);
-            }
-            
-            return results;
+            return scrape(doc, threads, rowsLimit);
             
         } catch (Exception e) {
             throw new Exception("Scraping failed: " + e.getMessage(), e);
-        } finally {
-            System.out.println("Scraping completed in " + (System.currentTimeMillis() - startTime) + "ms");
         }
     }
     
-    private void cleanDocument(Document doc) {
-        // Remove script and style elements
-        for (String tag : IGNORED_ELEMENTS) {
-            doc.select(tag).remove();
+    /**
+     * Extracts results from an already downloaded and parsed page
+     * @param doc The parsed page; it is cleaned in place
+     * @param threads Number of threads to use for parallel processing
+     * @param rowsLimit Maximum number of results to return
+     * @return List of scraped results
+     */
+    public List<String> scrape(Document doc, int threads, int rowsLimit) throws Exception {
+        return scrape(doc, ExtractionProfile.standard(), threads, rowsLimit);
+    }
+    
+    /**
+     * Extracts results from an already downloaded and parsed page using the given profile
+     * @param doc The parsed page; it is cleaned in place
+     * @param profile Selectors and rules of the page's site
+     * @param threads Number of threads to use for parallel processing
+     * @param rowsLimit Maximum number of results to return
+     * @return List of scraped results
+     */
+    public List<String> scrape(Document doc, ExtractionProfile profile, int threads, int rowsLimit) throws Exception {
+        List<String> results = new ArrayList<>();
+        scrape(doc, profile, threads, rowsLimit, results::add);
+        return results;
+    }
+    
+    /**
+     * Extracts results from an already downloaded and parsed page and pushes every
+     * accepted row to the sink as soon as it is known, without collecting them
+     * @param doc The parsed page; it is cleaned in place
+     * @param threads Number of threads to use for parallel processing
+     * @param rowsLimit Maximum number of results to return
+     * @param sink Receives the rows in the same order the list-returning variant uses
+     * @return Number of rows pushed to the sink
+     */
+    public int scrape(Document doc, int threads, int rowsLimit, RowSink sink) throws Exception {
+        return scrape(doc, ExtractionProfile.standard(), threads, rowsLimit, sink);
+    }
+    
+    /**
+     * Like {@link #scrape(Document, int, int, RowSink)}, but with the given profile's
+     * selectors, in the profile's order, and rules
+     */
+    public int scrape(Document doc, ExtractionProfile profile, int threads, int rowsLimit, RowSink sink) throws Exception {
+        return scrape(doc, profile, threads, rowsLimit, null, sink);
+    }
+    
+    /**
+     * Like {@link #scrape(Document, ExtractionProfile, int, int, RowSink)}, but rows the
+     * deduplicator has seen before, on this page or on others it was used for, are dropped
+     * and do not count toward rowsLimit
+     * @param dedup Deduplicator to check the rows against, or null to keep duplicates
+     */
+    public int scrape(Document doc, ExtractionProfile profile, int threads, int rowsLimit, RowDeduplicator dedup,
+                      RowSink sink) throws Exception {
+        return scrape(doc, profile, threads, rowsLimit, dedup, null, sink);
+    }
+    
+    /**
+     * Like {@link #scrape(Document, ExtractionProfile, int, int, RowDeduplicator, RowSink)}, but
+     * cleaning and extraction stop once the deadline expires. The rows pushed until then are a
+     * prefix of the full result. Cleaning and extraction that complete are timed in {@link Metrics};
+     * extraction includes the time the sink takes.
+     * @param deadline The deadline, or null for none
+     * @throws DeadlineExceededException If the deadline expired before the rows were complete
+     */
+    public int scrape(Document doc, ExtractionProfile profile, int threads, int rowsLimit, RowDeduplicator dedup,
+                      Deadline deadline, RowSink sink) throws Exception {
+        long start = System.nanoTime();
+        if (deadline == null) {
+            profile.getCleaner().clean(doc);
+        } else {
+            profile.getCleaner().clean(doc, deadline);
         }
+        Metrics.shared().recordSince(Metrics.Phase.CLEAN, start);
         
-        // Remove elements with ignored classes or IDs
-        for (String cls : IGNORED_CLASSES) {
-            doc.select("." + cls).remove();
-            doc.select("#" + cls).remove();
-            doc.select("[class*=" + cls + "]").remove();
+        start = System.nanoTime();
+        Elements contentElements = new Elements();
+        for (Evaluator evaluator : profile.getEvaluators()) {
+            contentElements.addAll(doc.select(evaluator));
+        }
+        if (deadline != null) {
+            deadline.check();
         }
         
-        // Remove common non-content elements
-        doc.select("header, footer, nav, aside, form, button, input, textarea, select, iframe").remove();
+        DuplicateCounter keep = dedup == null ? null : new DuplicateCounter(dedup);
+        int count = extractor.extract(contentElements, profile.getFilter()::rowOf, threads, rowsLimit, keep, deadline, sink);
+        Metrics.shared().recordSince(Metrics.Phase.EXTRACT, start);
+        
+        // A page whose rows were all seen before is not a page without content
+        if (count == 0 && (keep == null || keep.duplicates == 0)) {
+            sink.accept(NO_CONTENT);
+            return 1;
+        }
         
-        // Remove empty elements
-        doc.select(":empty").remove();
+        return count;
     }
     
     /**
-     * Processes HTML elements in parallel using the specified number of threads
+     * Extracts results while the page is still being read and parsed, and stops reading
+     * it as soon as rowsLimit rows have been accepted.
+     * Elements are taken once each, in the order the parser completes them, which is
+     * document order except that nested matches come before the elements containing them.
+     * Every match is cleaned on its own copy, so its text is the same as after cleaning the
+     * whole page. The work is sequential; the page arrives one element at a time anyway.
+     * @param html The page; it is closed when this returns
+     * @param baseUri URL the page was loaded from
+     * @param rowsLimit Maximum number of results to return, or 0 to read the whole page
+     * @param sink Receives the rows as soon as they are accepted
+     * @return Number of rows pushed to the sink
      */
-    private List<String> processElementsInParallel(Elements elements, int threadCount, int rowsLimit) 
-            throws InterruptedException, ExecutionException {
-            
-        if (elements == null || elements.isEmpty()) {
-            return Collections.emptyList();
-        }
-        
-        // Create thread pool
-        ExecutorService executor = Executors.newFixedThreadPool(
-            Math.min(threadCount, elements.size()),
-            r -> {
-                Thread t = new Thread(r);
-                t.setDaemon(true); // Make threads daemon threads
-                return t;
-            }
-        );
-        
-        try {
-            // Process elements in parallel
-            List<Future<String>> futures = new ArrayList<>();
-            for (Element element : elements) {
-                futures.add(executor.submit(() -> processElement(element)));
-            }
-            
-            // Collect results
-            List<String> results = new ArrayList<>();
-            for (Future<String> future : futures) {
-                String result = future.get();
-                if (result != null && !result.trim().isEmpty()) {
-                    results.add(result.trim());
-                    
-                    // Early termination if we've reached the row limit
-                    if (rowsLimit > 0 && results.size() >= rowsLimit) {
-                        break;
-                    }
-                }
-            }
-            
-            return results;
-            
-        } finally {
-            // Shutdown the executor
-            executor.shutdownNow();
-        }
+    public int scrapeIncremental(Reader html, String baseUri, int rowsLimit, RowSink sink) throws IOException {
+        return scrapeIncremental(html, baseUri, ExtractionProfile.standard(), rowsLimit, sink);
     }
     
     /**
-     * Processes a single HTML element and extracts relevant text
+     * Like {@link #scrapeIncremental(Reader, String, int, RowSink)}, with the given profile's selectors and rules
      */
-    private String processElement(Element element) {
-        if (element == null) {
-            return "";
-        }
+    public int scrapeIncremental(Reader html, String baseUri, ExtractionProfile profile, int rowsLimit, RowSink sink)
+            throws IOException {
+        return scrapeIncremental(html, baseUri, profile, rowsLimit, null, sink);
+    }
+    
+    /**
+     * Like {@link #scrapeIncremental(Reader, String, ExtractionProfile, int, RowSink)}, but
+     * duplicate rows are dropped and reading goes on until rowsLimit new rows are found
+     * @param dedup Deduplicator to check the rows against, or null to keep duplicates
+     */
+    public int scrapeIncremental(Reader html, String baseUri, ExtractionProfile profile, int rowsLimit,
+                                 RowDeduplicator dedup, RowSink sink) throws IOException {
+        return scrapeIncremental(html, baseUri, profile, rowsLimit, dedup, null, sink);
+    }
+    
+    /**
+     * Like {@link #scrapeIncremental(Reader, String, ExtractionProfile, int, RowDeduplicator, RowSink)},
+     * but stops at the next element once the deadline expires. A read blocked on a stalled
+     * download fails as soon as the stream is closed, as {@link HttpFetcher#open(String, Deadline)} does.
+     * @param deadline The deadline, or null for none
+     * @throws DeadlineExceededException If the deadline expired before the rows were complete
+     */
+    public int scrapeIncremental(Reader html, String baseUri, ExtractionProfile profile, int rowsLimit,
+                                 RowDeduplicator dedup, Deadline deadline, RowSink sink) throws IOException {
+        DocumentCleaner cleaner = profile.getCleaner();
+        ElementFilter filter = profile.getFilter();
+        Evaluator content = profile.getContentEvaluator();
+        DuplicateCounter keep = dedup == null ? null : new DuplicateCounter(dedup);
+        int count = 0;
         
-        // Skip elements with no text or very short text
-        String text = element.text().trim();
-        if (text.isEmpty() || text.length() < 10) {
-            return "";
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, baseUri)) {
+            Element element;
+            while ((rowsLimit <= 0 || count < rowsLimit) && (element = parser.selectNext(content)) != null) {
+                if (deadline != null) {
+                    deadline.check();
+                }
+                if (cleaner.isPruned(element) || !filter.mayAccept(element)) {
+                    continue;
+                }
+                
+                // The page is still growing around the element, so clean a detached copy
+                Element copy = element.clone();
+                cleaner.clean(copy);
+                String result = filter.rowOf(copy);
+                if (result != null && (keep == null || keep.test(result))) {
+                    sink.accept(result);
+                    count++;
+                }
+            }
+            
+            // Leave the rest of the page unread
+            parser.stop();
+        } catch (IOException e) {
+            // Reading fails once the stream is closed at the deadline
+            if (deadline != null && deadline.isExpired() && !(e instanceof DeadlineExceededException)) {
+                IOException exceeded = deadline.exceeded();
+                exceeded.initCause(e);
+                throw exceeded;
+            }
+            throw e;
+        }
+        if (deadline != null && deadline.isExpired() && (rowsLimit <= 0 || count < rowsLimit)) {
+            throw deadline.exceeded();
         }
         
-        // Skip elements that are likely navigation or metadata
-        String className = element.className().toLowerCase();
-        String id = element.id().toLowerCase();
-        
-        if (isUnwantedElement(className, id, element.tagName())) {
-            return "";
+        if (count == 0 && (keep == null || keep.duplicates == 0)) {
+            sink.accept(NO_CONTENT);
+            return 1;
         }
         
-        return text;
+        return count;
     }
     
     /**
-     * Checks if an element should be ignored based on its classes, ID, or tag name
+     * Checks rows against a deduplicator and counts the ones it drops; used on one thread
      */
-    private boolean isUnwantedElement(String className, String id, String tagName) {
-        // Skip common navigation and footer elements
-        if (className.contains("navi") || className.contains("footer") || 
-            className.contains("header") || className.contains("menu") ||
-            id.contains("navi") || id.contains("footer") || 
-            id.contains("header") || id.contains("menu")) {
-            return true;
+    private static final class DuplicateCounter implements Predicate<String> {
+        private final RowDeduplicator dedup;
+        private int duplicates;
+        
+        DuplicateCounter(RowDeduplicator dedup) {
+            this.dedup = dedup;
         }
         
-        // Skip common metadata tags
-        return "meta".equals(tagName) || "link".equals(tagName) || "script".equals(tagName) || 
-               "style".equals(tagName) || "noscript".equals(tagName);
+        @Override
+        public boolean test(String row) {
+            if (dedup.add(row)) {
+                return true;
+            }
+            duplicates++;
+            return false;
+        }
     }
 }
-
@@ -0,0 +1,222 @@
+package bg.university.mpr2025.scrapper;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extraction profiles by name and by host.
+ * Besides the built-in {@link ExtractionProfile#standard() default} profile, profiles can be
+ * loaded from a JSON file that is checked for changes at most once a second and re-read when
+ * it changes, so sites can be added or fixed without a restart. A file that fails to load
+ * leaves the previous profiles in place. Example:
+ * <pre>
+ * {"profiles": [
+ *   {"name": "techcrunch", "hosts": ["techcrunch.com"],
+ *    "selectors": ["h2.post-block__title a", "div.post-block__content"],
+ *    "ignoredTags": ["script", "nav"], "ignoredClasses": ["share"], "minTextLength": 10}
+ * ]}
+ * </pre>
+ * Omitted ignore rules and minimum length fall back to those of the default profile.
+ * A profile named {@code default} replaces the built-in one.
+ */
+public class ProfileRegistry {
+    private static final long RELOAD_CHECK_MS = 1000;
+
+    private static final ProfileRegistry SHARED = createShared();
+
+    private final Path file;
+    private volatile Profiles profiles;
+    private volatile long nextCheck;
+    private FileTime loadedVersion;
+
+    /**
+     * A registry holding only the built-in default profile
+     */
+    public ProfileRegistry() {
+        this(null);
+    }
+
+    /**
+     * @param file JSON profile file to load and watch, or null for the built-in profile only
+     */
+    public ProfileRegistry(Path file) {
+        this.file = file;
+        this.profiles = new Profiles(List.of());
+        if (file != null) {
+            reload();
+        }
+    }
+
+    private static ProfileRegistry createShared() {
+        String file = System.getProperty("scraper.profiles");
+        return new ProfileRegistry(file == null || file.trim().isEmpty() ? null : Paths.get(file.trim()));
+    }
+
+    /**
+     * Returns the registry shared by the whole process.
+     * Set {@code -Dscraper.profiles=<file>} to load profiles from a file.
+     */
+    public static ProfileRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Picks the profile for a request: the one with the given name if there is one,
+     * otherwise the one for the URL's host, otherwise the default profile
+     * @throws IllegalArgumentException If a name is given but no profile has it
+     */
+    public ExtractionProfile resolve(String name, String url) {
+        Profiles current = current();
+        if (name != null && !name.trim().isEmpty()) {
+            ExtractionProfile profile = current.byName.get(name.trim());
+            if (profile == null) {
+                throw new IllegalArgumentException("Unknown extraction profile: " + name);
+            }
+            return profile;
+        }
+        return current.forHost(Urls.host(url));
+    }
+
+    /**
+     * Returns the profile with the given name, or null
+     */
+    public ExtractionProfile get(String name) {
+        return current().byName.get(name);
+    }
+
+    public ExtractionProfile getDefault() {
+        return current().byName.get(ExtractionProfile.DEFAULT_NAME);
+    }
+
+    public int size() {
+        return current().byName.size();
+    }
+
+    /**
+     * Re-reads the profile file now
+     * @return True if the file was loaded, false if it failed and the previous profiles were kept
+     */
+    public synchronized boolean reload() {
+        if (file == null) {
+            return false;
+        }
+        nextCheck = System.currentTimeMillis() + RELOAD_CHECK_MS;
+        try {
+            FileTime version = Files.getLastModifiedTime(file);
+            ProfileFile parsed;
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                parsed = new Gson().fromJson(reader, ProfileFile.class);
+            }
+            profiles = new Profiles(compile(parsed));
+            loadedVersion = version;
+            System.out.println("Loaded " + profiles.byName.size() + " extraction profiles from " + file);
+            return true;
+        } catch (IOException | JsonParseException | IllegalArgumentException e) {
+            System.err.println("Error loading extraction profiles from " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Profiles current() {
+        if (file != null && System.currentTimeMillis() >= nextCheck) {
+            checkForChanges();
+        }
+        return profiles;
+    }
+
+    private synchronized void checkForChanges() {
+        if (System.currentTimeMillis() < nextCheck) {
+            return; // another thread just checked
+        }
+        nextCheck = System.currentTimeMillis() + RELOAD_CHECK_MS;
+        try {
+            if (!Files.getLastModifiedTime(file).equals(loadedVersion)) {
+                reload();
+            }
+        } catch (IOException e) {
+            System.err.println("Error checking extraction profiles in " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static List<ExtractionProfile> compile(ProfileFile parsed) {
+        if (parsed == null || parsed.profiles == null) {
+            throw new IllegalArgumentException("no \"profiles\" array");
+        }
+        ExtractionProfile standard = ExtractionProfile.standard();
+        DocumentCleaner standardCleaner = standard.getCleaner();
+
+        List<ExtractionProfile> compiled = new ArrayList<>(parsed.profiles.size());
+        for (ProfileFile.Profile p : parsed.profiles) {
+            if (p == null) {
+                continue;
+            }
+            DocumentCleaner cleaner = p.ignoredTags == null && p.ignoredClasses == null
+                    ? standardCleaner
+                    : new DocumentCleaner(
+                            p.ignoredTags != null ? p.ignoredTags : standardCleaner.getIgnoredTags(),
+                            p.ignoredClasses != null ? p.ignoredClasses : standardCleaner.getIgnoredNames());
+            compiled.add(new ExtractionProfile(p.name, p.hosts != null ? p.hosts : List.of(), p.selectors, cleaner,
+                    p.minTextLength != null ? p.minTextLength : standard.getMinTextLength()));
+        }
+        return compiled;
+    }
+
+    /**
+     * One consistent set of profiles; replaced as a whole on reload
+     */
+    private static class Profiles {
+        private final Map<String, ExtractionProfile> byName = new HashMap<>();
+        private final Map<String, ExtractionProfile> byHost = new HashMap<>();
+
+        Profiles(List<ExtractionProfile> loaded) {
+            byName.put(ExtractionProfile.DEFAULT_NAME, ExtractionProfile.standard());
+            for (ExtractionProfile profile : loaded) {
+                byName.put(profile.getName(), profile);
+                for (String host : profile.getHosts()) {
+                    byHost.put(host, profile);
+                }
+            }
+        }
+
+        ExtractionProfile forHost(String host) {
+            // www.example.com, then example.com, then com
+            for (String h = host; !h.isEmpty(); ) {
+                ExtractionProfile profile = byHost.get(h);
+                if (profile != null) {
+                    return profile;
+                }
+                int dot = h.indexOf('.');
+                h = dot < 0 ? "" : h.substring(dot + 1);
+            }
+            return byName.get(ExtractionProfile.DEFAULT_NAME);
+        }
+    }
+
+    /**
+     * Layout of the profile file
+     */
+    private static class ProfileFile {
+        List<Profile> profiles;
+
+        static class Profile {
+            String name;
+            List<String> hosts;
+            List<String> selectors;
+            List<String> ignoredTags;
+            List<String> ignoredClasses;
+            Integer minTextLength;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package bg.university.mpr2025.scrapper;
+
+import bg.university.mpr2025.utils.LongHashSet;
+
+import java.util.Arrays;
+
+/**
+ * Drops rows that repeat an earlier row, exactly or nearly.
+ * Rows are compared only by 64-bit fingerprints, never by their text. Both are taken over the
+ * row's words, lower-cased and without punctuation: an exact hash, and a SimHash of the
+ * character trigrams, in which texts sharing most of their trigrams differ in few bits.
+ * A row whose SimHash is within 3 bits of an earlier one is a near duplicate, such as an
+ * excerpt cut short or a headline with one word changed; rows shorter than 24 letters and
+ * digits are only compared exactly. SimHashes are looked up through four 16-bit bands, one
+ * of which is equal for any two within 3 bits, so a row is compared with a handful of
+ * candidates rather than with every row seen.
+ * At most {@code maxRows} rows are remembered per generation. When a generation is full it
+ * becomes the previous one and the one before is dropped, so a deduplicator shared by a long
+ * crawl stays bounded and keeps the most recent rows. Thread-safe.
+ */
+public final class RowDeduplicator {
+    public static final int DEFAULT_MAX_ROWS = 50_000;
+
+    private static final int MAX_DISTANCE = 3;
+    private static final int MIN_NEAR_CHARS = 24;
+    private static final int BANDS = 4;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int maxRows;
+    private Generation current = new Generation();
+    private Generation previous;
+    private long exactDuplicates;
+    private long nearDuplicates;
+
+    public RowDeduplicator() {
+        this(DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * @param maxRows Rows remembered per generation; up to twice as many are remembered in all
+     */
+    public RowDeduplicator(int maxRows) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("maxRows must be positive: " + maxRows);
+        }
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Remembers the row unless it repeats an earlier one
+     * @return True if the row is new, false if it is a duplicate and should be dropped
+     */
+    public boolean add(String row) {
+        // Most repeats are exact, and the exact fingerprint costs far less than the SimHash
+        Fingerprint fingerprint = new Fingerprint(row);
+        synchronized (this) {
+            if (containsExact(fingerprint.exact)) {
+                exactDuplicates++;
+                return false;
+            }
+        }
+        long simHash = fingerprint.near ? fingerprint.simHash() : 0;
+        synchronized (this) {
+            // Checked again, another thread may have added the same row meanwhile
+            if (containsExact(fingerprint.exact)) {
+                exactDuplicates++;
+                return false;
+            }
+            if (fingerprint.near && (current.containsNear(simHash)
+                    || previous != null && previous.containsNear(simHash))) {
+                nearDuplicates++;
+                return false;
+            }
+            if (current.exact.size() >= maxRows) {
+                previous = current;
+                current = new Generation();
+            }
+            current.exact.add(fingerprint.exact);
+            if (fingerprint.near) {
+                current.addNear(simHash);
+            }
+            return true;
+        }
+    }
+
+    private boolean containsExact(long exact) {
+        return current.exact.contains(exact) || previous != null && previous.exact.contains(exact);
+    }
+
+    /**
+     * Number of rows currently remembered
+     */
+    public synchronized int size() {
+        return current.exact.size() + (previous == null ? 0 : previous.exact.size());
+    }
+
+    public synchronized long getExactDuplicates() {
+        return exactDuplicates;
+    }
+
+    public synchronized long getNearDuplicates() {
+        return nearDuplicates;
+    }
+
+    /**
+     * The fingerprints of a row. The text they cover is the row's letters and digits,
+     * lower-cased, with one space between words and one around them.
+     */
+    private static final class Fingerprint {
+        private final String row;
+        private final long exact;
+        // Whether the row is long enough for its SimHash to say anything
+        private final boolean near;
+
+        Fingerprint(String row) {
+            this.row = row;
+            long hash = FNV_OFFSET;
+            int chars = 0;
+            boolean space = false;
+            for (int i = 0; i < row.length(); i++) {
+                char c = row.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    if (space && chars > 0) {
+                        hash = (hash ^ ' ') * FNV_PRIME;
+                    }
+                    space = false;
+                    hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+                    chars++;
+                } else {
+                    space = true;
+                }
+            }
+            this.exact = mix(hash);
+            this.near = chars >= MIN_NEAR_CHARS;
+        }
+
+        /**
+         * SimHash of the character trigrams: bit b is set when more than half of the trigram
+         * hashes have it set. The counts for all 64 bits are kept bit-sliced, bit j of
+         * {@code counts[j]} being bit j of each count, so a hash is added to all of them at
+         * once with a ripple carry instead of 64 separate increments. Rows longer than the
+         * counters reach are hashed over their first 65535 trigrams.
+         */
+        long simHash() {
+            long[] counts = new long[16];
+            int trigrams = 0;
+            long trigram = ' ';
+            int length = 1;
+            boolean space = true;
+            for (int i = 0; i <= row.length() && trigrams < 0xFFFF; i++) {
+                char c = i < row.length() ? row.charAt(i) : ' ';
+                char normalized;
+                if (Character.isLetterOrDigit(c)) {
+                    normalized = Character.toLowerCase(c);
+                    space = false;
+                } else if (space) {
+                    continue;
+                } else {
+                    normalized = ' ';
+                    space = true;
+                }
+                // Three 16-bit characters side by side
+                trigram = (trigram << 16 | normalized) & 0xFFFF_FFFF_FFFFL;
+                if (++length >= 3) {
+                    long carry = mix(trigram);
+                    for (int j = 0; carry != 0; j++) {
+                        long sum = counts[j] ^ carry;
+                        carry &= counts[j];
+                        counts[j] = sum;
+                    }
+                    trigrams++;
+                }
+            }
+            long simHash = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                int ones = 0;
+                for (int j = 0; j < counts.length; j++) {
+                    ones |= (int) (counts[j] >>> bit & 1) << j;
+                }
+                if (ones * 2 > trigrams) {
+                    simHash |= 1L << bit;
+                }
+            }
+            return simHash;
+        }
+    }
+
+    /**
+     * MurmurHash3 finalizer
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * The rows remembered since the last rotation: a set of exact fingerprints and the
+     * SimHashes chained by the value of each of their bands
+     */
+    private static final class Generation {
+        private final LongHashSet exact = new LongHashSet();
+        private long[] simHashes = new long[16];
+        private int count;
+        // Per band: first SimHash index for a bucket of band values, and the next index in the chain
+        private int[][] heads = newHeads(32);
+        private int[][] next = new int[BANDS][16];
+
+        boolean containsNear(long simHash) {
+            int mask = heads[0].length - 1;
+            for (int band = 0; band < BANDS; band++) {
+                int bucket = band(simHash, band) & mask;
+                for (int i = heads[band][bucket]; i >= 0; i = next[band][i]) {
+                    if (Long.bitCount(simHashes[i] ^ simHash) <= MAX_DISTANCE) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void addNear(long simHash) {
+            if (count == simHashes.length) {
+                simHashes = Arrays.copyOf(simHashes, count * 2);
+                for (int band = 0; band < BANDS; band++) {
+                    next[band] = Arrays.copyOf(next[band], count * 2);
+                }
+                // Twice as many buckets as hashes keeps the chains short
+                heads = newHeads(count * 4);
+                for (int i = 0; i < count; i++) {
+                    link(i);
+                }
+            }
+            simHashes[count] = simHash;
+            link(count++);
+        }
+
+        private void link(int index) {
+            int mask = heads[0].length - 1;
+            for (int band = 0; band < BANDS; band++) {
+                int bucket = band(simHashes[index], band) & mask;
+                next[band][index] = heads[band][bucket];
+                heads[band][bucket] = index;
+            }
+        }
+
+        private static int band(long simHash, int band) {
+            return (int) (simHash >>> (band * 16)) & 0xFFFF;
+        }
+
+        private static int[][] newHeads(int buckets) {
+            int[][] heads = new int[BANDS][Math.min(buckets, 1 << 16)];
+            for (int[] band : heads) {
+                Arrays.fill(band, -1);
+            }
+            return heads;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package bg.university.mpr2025.scrapper;
+
+import java.io.IOException;
+
+/**
+ * Receives scraped rows one at a time, in result order, as soon as they are accepted
+ */
+@FunctionalInterface
+public interface RowSink {
+
+    /**
+     * @throws IOException If the row cannot be delivered; the scrape is then abandoned
+     */
+    void accept(String row) throws IOException;
+}
@@ -0,0 +1,29 @@
+package bg.university.mpr2025.scrapper;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Process-wide compute pool for element processing.
+ * Every scrape shares one work-stealing pool sized to the number of cores, so the
+ * total number of CPU threads stays bounded however many requests are in flight.
+ * A request's thread count caps how many of these threads work on it at once;
+ * {@link ParallelExtractor} sizes the pieces from the measured cost of the work.
+ */
+public final class ScraperExecutor {
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("scraper-worker-" + t.getPoolIndex());
+        t.setDaemon(true);
+        return t;
+    }, null, false);
+
+    private ScraperExecutor() {
+    }
+
+    public static ForkJoinPool pool() {
+        return POOL;
+    }
+}
@@ -0,0 +1,82 @@
+package bg.university.mpr2025.scrapper;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+/**
+ * URL helpers shared by the scraping components
+ */
+public final class Urls {
+
+    private Urls() {
+    }
+
+    /**
+     * Normalizes a URL so that equivalent spellings map to the same key:
+     * lower-case scheme and host, no default port, no fragment and a non-empty path.
+     * Unparseable input is returned trimmed but otherwise unchanged.
+     */
+    public static String normalize(String url) {
+        String trimmed = url.trim();
+        try {
+            URI uri = new URI(trimmed);
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return trimmed;
+            }
+
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+
+            StringBuilder sb = new StringBuilder(trimmed.length());
+            sb.append(scheme).append("://").append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (port != -1) {
+                sb.append(':').append(port);
+            }
+            sb.append(path);
+            if (uri.getRawQuery() != null) {
+                sb.append('?').append(uri.getRawQuery());
+            }
+            return sb.toString();
+        } catch (URISyntaxException e) {
+            return trimmed;
+        }
+    }
+
+    /**
+     * Returns the lower-case host of a URL, or an empty string if it has none
+     */
+    public static String host(String url) {
+        try {
+            String host = new URI(url.trim()).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+
+    /**
+     * 64-bit fingerprint of a URL, for remembering it without keeping the string.
+     * Two different URLs share a fingerprint with a probability of about 2^-64, which
+     * stays negligible across millions of them. Normalize the URL first so that
+     * equivalent spellings get the same fingerprint.
+     */
+    public static long fingerprint(String url) {
+        // FNV-1a over the characters, then the MurmurHash3 finalizer to spread the bits
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            h ^= url.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,259 @@
+package bg.university.mpr2025.server;
+
+import bg.university.mpr2025.models.ScrapeResult;
+import bg.university.mpr2025.utils.Metrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether the server takes on another request or turns it away as busy.
+ * Requests in flight, queued or running, are capped by a limit that follows their latency.
+ * The baseline is the lowest recent latency, averaged over a few requests so that a mix of
+ * cached and fetched pages evens out, and remembered for 10 to 20 seconds. While recent
+ * requests take no more than twice the baseline, or 20 ms more for requests that are fast
+ * anyway, the limit grows, but once they take longer, because work is piling up, it shrinks
+ * in proportion. The limit moves at most once per
+ * round of requests, so each change is judged by latencies taken under the previous one.
+ * A request over the limit is answered busy at once instead of being queued, and one that
+ * still waited longer than {@code maxQueueMs} before it could run is answered busy when its
+ * turn comes, so waiting time stays bounded during a burst.
+ * Busy results carry a {@code retryAfterMs} of about the time recent requests took.
+ */
+public final class AdmissionController {
+    public static final String BUSY = "busy";
+
+    private static final AdmissionController SHARED = new AdmissionController(
+            Integer.getInteger("scraper.admission.initialLimit", 64),
+            Integer.getInteger("scraper.admission.minLimit", 8),
+            Integer.getInteger("scraper.admission.maxLimit", 1024),
+            Long.getLong("scraper.admission.maxQueueMs", 500));
+    private static final int QUEUE_CAPACITY = Integer.getInteger("scraper.server.queueCapacity", 256);
+
+    // How much slower than the baseline requests may get before the limit shrinks
+    private static final double TOLERANCE = 2.0;
+    private static final double MIN_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final double SMOOTHING = 0.2;
+    private static final int SHORT_WINDOW = 10;
+    private static final long BASELINE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long MIN_RETRY_AFTER_MS = 50;
+    private static final long MAX_RETRY_AFTER_MS = 10_000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long maxQueueNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    // Guarded by this: the unrounded limit, the recent latency average and the lowest average of
+    // this window and the one before, in nanoseconds
+    private double estimatedLimit;
+    private double shortLatency;
+    private double windowMin = Double.MAX_VALUE;
+    private double previousWindowMin = Double.MAX_VALUE;
+    private long windowStart = System.nanoTime();
+    // Guarded by this: the current round of samples
+    private int roundSamples;
+    private int roundMaxInFlight;
+    private long roundStart = System.nanoTime();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * @param initialLimit Requests in flight allowed before any latency has been seen
+     * @param minLimit Requests in flight always allowed, however slow they get
+     * @param maxLimit Requests in flight never exceeded, however fast they are
+     * @param maxQueueMs Longest a request may wait before it runs; later ones are answered busy
+     */
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit, long maxQueueMs) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max: "
+                    + minLimit + ", " + initialLimit + ", " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueMs);
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    /**
+     * Returns the controller shared by all server engines. Set {@code -Dscraper.admission.initialLimit},
+     * {@code minLimit}, {@code maxLimit} and {@code maxQueueMs} to change its defaults of 64, 8, 1024
+     * and 500 ms.
+     */
+    public static AdmissionController shared() {
+        return SHARED;
+    }
+
+    /**
+     * Creates a fixed pool whose queue holds at most {@code -Dscraper.server.queueCapacity}
+     * tasks (256); further tasks are rejected with a {@link java.util.concurrent.RejectedExecutionException}
+     */
+    public static ExecutorService newBoundedPool(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+    }
+
+    /**
+     * Admits a request that has just arrived
+     * @return The request's ticket, or null if the server is at its limit and it should be answered busy
+     */
+    public Ticket tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Admits a request that arrived earlier, e.g. on a connection that waited for a thread
+     * @param arrivedAt {@link System#nanoTime()} when the request arrived
+     */
+    public Ticket tryAcquire(long arrivedAt) {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                admitted.increment();
+                return new Ticket(arrivedAt);
+            }
+        }
+    }
+
+    /**
+     * An admitted request's place in the limit, given back by {@link #finish} or {@link #cancel}.
+     * Not thread-safe; it is handed over along with its request.
+     */
+    public final class Ticket {
+        private final long arrivedAt;
+        private boolean released;
+
+        Ticket(long arrivedAt) {
+            this.arrivedAt = arrivedAt;
+        }
+
+        /**
+         * Called when the request is about to run; records how long it waited
+         * @return False if it waited too long; the ticket is then given back and the request
+         * should be answered busy
+         */
+        public boolean start() {
+            long waited = System.nanoTime() - arrivedAt;
+            Metrics.shared().histogram(Metrics.Phase.QUEUE).record(waited);
+            if (waited > maxQueueNanos) {
+                shed.increment();
+                cancel();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Gives the ticket back once the request has been answered, adapting the limit to its latency
+         */
+        public void finish() {
+            if (!released) {
+                long latency = System.nanoTime() - arrivedAt;
+                int current = inFlight.get();
+                cancel();
+                sample(latency, current);
+            }
+        }
+
+        /**
+         * Gives the ticket back without the request's latency, e.g. when it was never run
+         */
+        public void cancel() {
+            if (!released) {
+                released = true;
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private synchronized void sample(long latency, int inFlightAtFinish) {
+        shortLatency = shortLatency == 0 ? latency : shortLatency + (latency - shortLatency) / SHORT_WINDOW;
+        // Windows roll over, so a baseline from before the sites got slower is forgotten
+        long now = System.nanoTime();
+        if (now - windowStart > BASELINE_WINDOW_NANOS) {
+            previousWindowMin = windowMin;
+            windowMin = Double.MAX_VALUE;
+            windowStart = now;
+        }
+        windowMin = Math.min(windowMin, shortLatency);
+        double baseline = Math.min(windowMin, previousWindowMin);
+
+        // A round lasts a few requests and at least as long as one takes
+        roundSamples++;
+        roundMaxInFlight = Math.max(roundMaxInFlight, inFlightAtFinish);
+        if (roundSamples < SHORT_WINDOW || now - roundStart < shortLatency) {
+            return;
+        }
+        int maxInFlight = roundMaxInFlight;
+        roundSamples = 0;
+        roundMaxInFlight = 0;
+        roundStart = now;
+        // Far below the limit the latency says nothing about what more requests would do
+        if (maxInFlight < estimatedLimit / 2) {
+            return;
+        }
+
+        double tolerated = Math.max(TOLERANCE * baseline, baseline + MIN_SLACK_NANOS);
+        double gradient = Math.max(0.5, Math.min(1.0, tolerated / shortLatency));
+        // Growing by the square root probes quickly at small limits and gently at large ones
+        double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    /**
+     * Builds the busy answer to a request that was not admitted
+     */
+    public ScrapeResult busy(String id) {
+        return ScrapeService.busy(id, getRetryAfterMs());
+    }
+
+    /**
+     * How long a client turned away should wait: about as long as recent requests took
+     */
+    public synchronized long getRetryAfterMs() {
+        long ms = (long) (shortLatency / 1_000_000);
+        return Math.max(MIN_RETRY_AFTER_MS, Math.min(MAX_RETRY_AFTER_MS, ms));
+    }
+
+    /**
+     * Current number of requests allowed in flight
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    /**
+     * Requests answered busy on arrival because the limit was reached
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Admitted requests answered busy because they waited too long to run
+     */
+    public long getShed() {
+        return shed.sum();
+    }
+}
@@ -0,0 +1,120 @@
+package bg.university.mpr2025.server;
+
+import bg.university.mpr2025.utils.BufferPool;
+import bg.university.mpr2025.utils.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Splits the bytes arriving on one connection into newline-terminated requests.
+ * Reads go straight into a pooled direct buffer that doubles in size whenever a
+ * request does not fit, up to the pool's maximum buffer size. Newlines are found by
+ * scanning bytes, and each byte is scanned only once however many reads a request spans.
+ * Not thread-safe: a reader belongs to the thread serving its connection.
+ */
+final class FrameReader {
+    private final BufferPool pool;
+    // In write mode: [0, position) holds bytes received but not yet handed out
+    private ByteBuffer buffer;
+    private int frameStart;
+    private int scanned;
+    // Reusable view handed out by nextFrame(), recreated whenever the buffer is replaced
+    private ByteBuffer frame;
+
+    FrameReader(BufferPool pool) {
+        this.pool = pool;
+        this.buffer = pool.acquire(0);
+    }
+
+    /**
+     * Reads whatever the channel has available, growing the buffer first if it is full,
+     * and counts the bytes in {@link Metrics}
+     * @return Number of bytes read, or -1 at end of stream
+     */
+    int read(ReadableByteChannel channel) throws IOException {
+        if (!buffer.hasRemaining() && buffer.capacity() < pool.getMaxSize()) {
+            buffer = pool.grow(buffer);
+            frame = null;
+        }
+        int read = channel.read(buffer);
+        if (read > 0) {
+            Metrics.shared().add(Metrics.Counter.BYTES_IN, read);
+        }
+        return read;
+    }
+
+    /**
+     * Returns the next complete request line without its newline, or null if none has fully arrived.
+     * The returned view shares this reader's memory and is only valid until the next call.
+     */
+    ByteBuffer nextFrame() {
+        int end = buffer.position();
+        for (int i = scanned; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                if (frame == null) {
+                    frame = buffer.duplicate();
+                }
+                frame.limit(i).position(frameStart);
+                frameStart = i + 1;
+                scanned = frameStart;
+                return frame;
+            }
+        }
+        scanned = end;
+        compact();
+        return null;
+    }
+
+    /**
+     * Whether a frame holds nothing but whitespace
+     */
+    static boolean isBlank(ByteBuffer frame) {
+        for (int i = frame.position(); i < frame.limit(); i++) {
+            byte b = frame.get(i);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether an incomplete request already fills the largest buffer the pool hands out
+     */
+    boolean isOverflowing() {
+        return frameStart == 0 && !buffer.hasRemaining() && buffer.capacity() >= pool.getMaxSize();
+    }
+
+    /**
+     * Returns the buffer to the pool; the reader must not be used afterwards
+     */
+    void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            frame = null;
+        }
+    }
+
+    private void compact() {
+        if (frameStart == 0) {
+            return;
+        }
+        if (frameStart == buffer.position()) {
+            // Everything was handed out; swap an oversized buffer back for a small one
+            if (buffer.capacity() > pool.getMinSize()) {
+                pool.release(buffer);
+                buffer = pool.acquire(0);
+                frame = null;
+            }
+            buffer.clear();
+        } else {
+            buffer.limit(buffer.position()).position(frameStart);
+            buffer.compact();
+        }
+        scanned -= frameStart;
+        frameStart = 0;
+    }
+}
@@ -0,0 +1,18 @@
+package bg.university.mpr2025.server;
+
+import bg.university.mpr2025.models.ScrapeResult;
+
+import java.io.IOException;
+
+/**
+ * Receives the lines a streamed response sends ahead of its final result:
+ * one per row of a streamed request, or one per page of a streamed batch
+ */
+@FunctionalInterface
+public interface ResultSink {
+
+    /**
+     * @throws IOException If the line cannot be delivered; the request is then abandoned
+     */
+    void accept(ScrapeResult line) throws IOException;
+}
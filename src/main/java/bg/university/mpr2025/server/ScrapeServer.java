@@ -0,0 +1,14 @@
+package bg.university.mpr2025.server;
+
+/**
+ * Common lifecycle of the server engines
+ */
+public interface ScrapeServer {
+
+    /**
+     * Binds the port and serves clients until {@link #stop()} is called
+     */
+    void start();
+
+    void stop();
+}
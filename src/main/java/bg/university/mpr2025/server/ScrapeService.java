@@ -0,0 +1,771 @@
+package bg.university.mpr2025.server;
+
+import bg.university.mpr2025.models.ScrapeRequest;
+import bg.university.mpr2025.models.ScrapeResult;
+import bg.university.mpr2025.scrapper.Crawler;
+import bg.university.mpr2025.scrapper.Deadline;
+import bg.university.mpr2025.scrapper.DeadlineExceededException;
+import bg.university.mpr2025.scrapper.ExtractionProfile;
+import bg.university.mpr2025.scrapper.FetchLimiter;
+import bg.university.mpr2025.scrapper.HttpFetcher;
+import bg.university.mpr2025.scrapper.HttpFetcher.PageStream;
+import bg.university.mpr2025.scrapper.PageCache;
+import bg.university.mpr2025.scrapper.ParallelScraper;
+import bg.university.mpr2025.scrapper.ProfileRegistry;
+import bg.university.mpr2025.scrapper.RowDeduplicator;
+import bg.university.mpr2025.scrapper.RowSink;
+import bg.university.mpr2025.scrapper.Urls;
+import bg.university.mpr2025.utils.Metrics;
+import bg.university.mpr2025.utils.VirtualThreads;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scraping entry point shared by all server engines.
+ * Requests go through the process-wide {@link PageCache} before reaching
+ * {@link ParallelScraper}, so repeated requests for the same page skip the
+ * download and, for the same row limit, the parsing as well.
+ * Concurrent requests for the same normalized URL and profile are coalesced: the first
+ * one scrapes, the others wait for its result and take the rows they asked for.
+ * Requests asking for more rows than the scrape in progress still share its download.
+ * Each request is scraped with the {@link ExtractionProfile} it names, or else the one
+ * for its URL's host, as found in the {@link ProfileRegistry}.
+ * Batch requests scrape their pages concurrently, as many at once as the {@link FetchLimiter}
+ * allows in total and per host, and crawl requests go through the {@link Crawler} under the
+ * same limits.
+ * Every request runs under a {@link Deadline}, {@code deadlineMs} after it arrived if it set
+ * one, which engines also cancel when its client goes away. Queueing, fetching, cleaning and
+ * extraction all stop once it expires, and the request is answered with the rows found so far.
+ */
+public class ScrapeService {
+    public static final String TIMEOUT = "timeout";
+    public static final String CANCELLED = "cancelled";
+
+    private static final long CACHE_TTL_MS = 30_000;
+    private static final long CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_BATCH_PAGES = 1000;
+    private static final int MAX_CRAWL_DEPTH = 10;
+    private static final int MAX_CRAWL_PAGES = 10_000;
+    // Only ever runs pages holding a limiter permit, so it never has more threads than permits
+    private static final ExecutorService BATCH_EXECUTOR = VirtualThreads.newThreadPerTaskExecutor("batch-page");
+
+    private static final ScrapeService SHARED = new ScrapeService(
+            new ParallelScraper(), new PageCache(HttpFetcher.shared(), CACHE_TTL_MS, CACHE_MAX_BYTES));
+
+    private final ParallelScraper scraper;
+    private final PageCache cache;
+    private final HttpFetcher fetcher;
+    private final ProfileRegistry profiles;
+    private final FetchLimiter limiter;
+    private final Crawler crawler;
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public ScrapeService(ParallelScraper scraper, PageCache cache) {
+        this(scraper, cache, HttpFetcher.shared());
+    }
+
+    /**
+     * @param fetcher Used by incremental scrapes, which stream the page instead of going through the cache
+     */
+    public ScrapeService(ParallelScraper scraper, PageCache cache, HttpFetcher fetcher) {
+        this(scraper, cache, fetcher, ProfileRegistry.shared());
+    }
+
+    public ScrapeService(ParallelScraper scraper, PageCache cache, HttpFetcher fetcher, ProfileRegistry profiles) {
+        this(scraper, cache, fetcher, profiles, FetchLimiter.shared());
+    }
+
+    /**
+     * @param limiter Caps how many pages of batch requests are scraped at once
+     */
+    public ScrapeService(ParallelScraper scraper, PageCache cache, HttpFetcher fetcher, ProfileRegistry profiles,
+                         FetchLimiter limiter) {
+        this.scraper = scraper;
+        this.cache = cache;
+        this.fetcher = fetcher;
+        this.profiles = profiles;
+        this.limiter = limiter;
+        this.crawler = new Crawler(fetcher, scraper, limiter);
+    }
+
+    public static ScrapeService shared() {
+        return SHARED;
+    }
+
+    /**
+     * Scrapes a website, serving it from the page cache or from an identical
+     * scrape already in progress when possible
+     * @param url The URL to scrape
+     * @param threads Number of threads to use for parallel processing
+     * @param rowsLimit Maximum number of results to return
+     * @return List of scraped results
+     */
+    public List<String> scrape(String url, int threads, int rowsLimit) throws Exception {
+        return scrape(url, profiles.resolve(null, url), threads, rowsLimit);
+    }
+
+    /**
+     * Like {@link #scrape(String, int, int)}, with the given extraction profile
+     */
+    public List<String> scrape(String url, ExtractionProfile profile, int threads, int rowsLimit) throws Exception {
+        return scrape(url, profile, threads, rowsLimit, Deadline.none());
+    }
+
+    /**
+     * Like {@link #scrape(String, ExtractionProfile, int, int)}, but given up once the deadline
+     * expires. A request waiting for another one's scrape only stops waiting; a leading request
+     * that stops hands its followers back to scraping on their own.
+     * @throws Exception Also when the deadline expired; no rows are returned then
+     */
+    public List<String> scrape(String url, ExtractionProfile profile, int threads, int rowsLimit, Deadline deadline)
+            throws Exception {
+        String key = Urls.normalize(url);
+        String flightKey = profile.getName() + " " + key;
+        while (true) {
+            Flight flight = new Flight(profile, rowsLimit);
+            Flight existing = inFlight.putIfAbsent(flightKey, flight);
+
+            // A scrape with at least as many rows already in progress covers this request
+            if (existing != null && existing.profile == profile && existing.rowsLimit >= rowsLimit) {
+                coalesced.incrementAndGet();
+                List<String> results;
+                try {
+                    results = join(existing, deadline);
+                } catch (DeadlineExceededException e) {
+                    if (deadline.isExpired()) {
+                        throw new Exception("Scraping failed: " + e.getMessage(), e);
+                    }
+                    continue; // the leader's deadline, not ours
+                }
+                return results.size() > rowsLimit ? results.subList(0, rowsLimit) : results;
+            }
+
+            // Otherwise this request leads the next round, so later requests join the bigger scrape
+            boolean leader = existing == null || inFlight.replace(flightKey, existing, flight);
+            try {
+                List<String> results = scrapeCached(key, profile, threads, rowsLimit, deadline);
+                if (leader) {
+                    flight.result.complete(results);
+                }
+                return results;
+            } catch (Exception e) {
+                Exception failure = new Exception("Scraping failed: " + e.getMessage(), e);
+                if (leader && e instanceof DeadlineExceededException) {
+                    // Removed first, so the followers retrying do not find this flight again
+                    inFlight.remove(flightKey, flight);
+                    flight.result.completeExceptionally(e);
+                } else if (leader) {
+                    flight.result.completeExceptionally(failure);
+                }
+                throw failure;
+            } finally {
+                if (leader) {
+                    inFlight.remove(flightKey, flight);
+                }
+            }
+        }
+    }
+
+    /**
+     * The deadline of a request: {@code deadlineMs} after it arrived, or none if it set none.
+     * Either way the server can cancel it, e.g. once the client has gone away.
+     * @param arrivedAt {@link System#nanoTime()} when the request arrived
+     */
+    public static Deadline deadlineOf(ScrapeRequest request, long arrivedAt) {
+        if (request != null && request.deadlineMs > 0) {
+            return Deadline.at(arrivedAt + TimeUnit.MILLISECONDS.toNanos(request.deadlineMs));
+        }
+        return Deadline.none();
+    }
+
+    /**
+     * Validates a request, scrapes it and wraps the outcome in a result carrying the request's ID
+     */
+    public ScrapeResult execute(ScrapeRequest request) {
+        return execute(request, null);
+    }
+
+    /**
+     * Like {@link #execute(ScrapeRequest)}, but a request with {@code stream} set pushes its rows
+     * to the sink as they are extracted and the returned summary carries no rows.
+     * A request with {@code incremental} set is scraped with {@link #incremental}.
+     * A request with a {@code batch} is scraped with {@link #executeBatch}, and one with
+     * {@code crawl} set with {@link #executeCrawl}.
+     * A request with {@code dedup} set drops rows repeating an earlier row of the page; it
+     * reuses a cached copy of the page but never cached rows, and is not coalesced.
+     * A request naming an unknown {@code profile} is answered with an error.
+     * A request with {@code deadlineMs} set is answered once that time has passed since now,
+     * with the rows found so far.
+     * A request with {@code stats} set is answered with {@link #stats} instead; engines answer
+     * it without admission, so it works while they are overloaded.
+     * @param lines Receives the lines of a streamed request, e.g. by writing each to the client
+     */
+    public ScrapeResult execute(ScrapeRequest request, ResultSink lines) {
+        return execute(request, lines, deadlineOf(request, System.nanoTime()));
+    }
+
+    /**
+     * Like {@link #execute(ScrapeRequest, ResultSink)}, under the given deadline, normally the
+     * request's {@link #deadlineOf} from its arrival. Once the deadline expires, the request is
+     * answered with status {@value #TIMEOUT}, or {@value #CANCELLED} if it was cancelled, and
+     * the rows found so far; streamed rows already sent stand. A request with a timed deadline
+     * is not coalesced, so that it has rows of its own to return.
+     */
+    public ScrapeResult execute(ScrapeRequest request, ResultSink lines, Deadline deadline) {
+        ScrapeResult result = execute(request, lines, null, deadline);
+        count(result.getStatus());
+        return result;
+    }
+
+    /**
+     * @param shared Deduplicator of the batch the request belongs to, or null
+     */
+    private ScrapeResult execute(ScrapeRequest request, ResultSink lines, RowDeduplicator shared, Deadline deadline) {
+        if (request != null && request.stats) {
+            return stats(request.id, AdmissionController.shared());
+        }
+        if (request != null && request.batch != null) {
+            return executeBatch(request, lines, deadline);
+        }
+        if (request == null || request.url == null || request.url.trim().isEmpty()) {
+            return error(request == null ? null : request.id, "Invalid request: URL is required");
+        }
+        if (request.crawl) {
+            return executeCrawl(request, lines, deadline);
+        }
+
+        int threads = request.threads > 0 ? request.threads : 1;
+        int rows = request.rows > 0 ? request.rows : 10; // Default to 10 rows if not specified
+        ExtractionProfile profile;
+        try {
+            profile = profiles.resolve(request.profile, request.url);
+        } catch (IllegalArgumentException e) {
+            return error(request.id, "Invalid request: " + e.getMessage());
+        }
+
+        if (deadline.isExpired()) {
+            return expired(request.id, deadline, List.of()); // e.g. it waited in a queue for too long
+        }
+
+        RowDeduplicator dedup = shared != null ? shared : request.dedup ? new RowDeduplicator() : null;
+        RowSink rowSink = lines == null ? null : row -> lines.accept(row(request.id, row));
+        boolean streamed = request.stream && rowSink != null;
+        // Rows are collected here rather than returned, so the ones found in time are kept
+        List<String> collected = streamed ? null : new ArrayList<>();
+        ScrapeResult result = new ScrapeResult();
+        result.setId(request.id);
+        long startTime = System.currentTimeMillis();
+        try {
+            if (request.incremental) {
+                long skipped = incremental(request.url, profile, rows, dedup, deadline, streamed ? rowSink : collected::add);
+                if (skipped >= 0) {
+                    result.setBytesSkipped(skipped);
+                }
+            } else if (streamed) {
+                stream(request.url, profile, threads, rows, dedup, deadline, rowSink);
+            } else if (dedup != null || deadline.isTimed()) {
+                stream(request.url, profile, threads, rows, dedup, deadline, collected::add);
+            } else {
+                collected = scrape(request.url, profile, threads, rows, deadline);
+            }
+            result.setStatus("success");
+            result.setResults(collected);
+        } catch (Exception e) {
+            if (deadline.isExpired()) {
+                result.setStatus(deadline.isCancelled() ? CANCELLED : TIMEOUT);
+                result.setResults(collected);
+            } else {
+                result.setStatus("error");
+                result.setResults(List.of("Error during scraping: " + e.getMessage()));
+            }
+        }
+        result.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    /**
+     * Scrapes the pages of a batch request concurrently. Pages start as soon as the
+     * {@link FetchLimiter} has a permit for their host, so a slow or crowded host holds up
+     * only its own pages. Each page takes the batch's threads, rows, profile and incremental
+     * setting unless it sets its own, and is served through the cache and
+     * coalesced with other requests like any single request; a URL listed twice is scraped once.
+     * Page results carry the batch's id and their own {@code url}.
+     * With {@code dedup} set on the batch, a row is dropped when any page of the batch had it
+     * first, in whichever order the pages finish.
+     * The result holds every page's result by URL, in request order. With {@code stream} set,
+     * each page's result is sent as its own line instead, in completion order, followed by a
+     * summary line.
+     */
+    public ScrapeResult executeBatch(ScrapeRequest request, ResultSink lines) {
+        return executeBatch(request, lines, deadlineOf(request, System.nanoTime()));
+    }
+
+    /**
+     * Like {@link #executeBatch(ScrapeRequest, ResultSink)}, under the given deadline. Pages not
+     * started by then are answered {@value #TIMEOUT} without rows and pages under way with the rows
+     * found so far; the batch's status is then {@value #TIMEOUT} or {@value #CANCELLED} as well.
+     */
+    public ScrapeResult executeBatch(ScrapeRequest request, ResultSink lines, Deadline deadline) {
+        long startTime = System.currentTimeMillis();
+        if (request.batch.isEmpty() || request.batch.size() > MAX_BATCH_PAGES) {
+            return error(request.id, "Invalid request: a batch needs 1 to " + MAX_BATCH_PAGES + " pages");
+        }
+        Map<String, ScrapeResult> results = new LinkedHashMap<>();
+        Deque<BatchPage> waiting = new ArrayDeque<>();
+        for (ScrapeRequest item : request.batch) {
+            if (item == null || item.url == null || item.url.trim().isEmpty()) {
+                return error(request.id, "Invalid request: every page of a batch needs a URL");
+            }
+            if (item.batch != null) {
+                return error(request.id, "Invalid request: batches cannot be nested");
+            }
+            if (!results.containsKey(item.url)) {
+                // Reserves the URL's place in request order
+                results.put(item.url, null);
+                waiting.add(new BatchPage(pageRequest(request, item)));
+            }
+        }
+
+        boolean streamed = request.stream && lines != null;
+        RowDeduplicator dedup = request.dedup ? new RowDeduplicator() : null;
+        BlockingQueue<ScrapeResult> done = new LinkedBlockingQueue<>();
+        int running = 0;
+        try {
+            while (!waiting.isEmpty() || running > 0) {
+                if (deadline.isExpired()) {
+                    // Pages not started in time are answered without being scraped
+                    for (BatchPage page : waiting) {
+                        ScrapeResult skipped = expired(page.request.id, deadline, List.of());
+                        skipped.setUrl(page.request.url);
+                        done.add(skipped);
+                        running++;
+                    }
+                    waiting.clear();
+                }
+                // Taken before trying, so a permit released meanwhile is not missed
+                long version = limiter.version();
+                for (Iterator<BatchPage> it = waiting.iterator(); it.hasNext(); ) {
+                    BatchPage page = it.next();
+                    if (limiter.tryAcquire(page.host)) {
+                        it.remove();
+                        running++;
+                        BATCH_EXECUTOR.execute(() -> scrapePage(page, dedup, deadline, done));
+                    }
+                }
+
+                ScrapeResult finished = done.poll();
+                if (finished == null) {
+                    if (!waiting.isEmpty()) {
+                        limiter.awaitRelease(version, deadline);
+                        continue;
+                    }
+                    // Pages under way stop at the deadline as well
+                    finished = done.take();
+                }
+                running--;
+                if (streamed) {
+                    lines.accept(finished);
+                } else {
+                    results.put(finished.getUrl(), finished);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error(request.id, "Batch interrupted");
+        } catch (IOException e) {
+            // Pages already started finish on their own and give their permits back
+            return error(request.id, "Error sending batch results: " + e.getMessage());
+        }
+
+        ScrapeResult result = new ScrapeResult();
+        result.setId(request.id);
+        result.setStatus(statusOf(deadline));
+        if (!streamed) {
+            result.setBatch(results);
+        }
+        result.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    /**
+     * Crawls the site of the request's URL, following links up to {@code depth} (default 1)
+     * and fetching at most {@code pages} pages (default 50), each scraped for up to
+     * {@code rows} rows. Fetches share the {@link FetchLimiter} with batches and are spaced
+     * out per host by the crawler. Crawled pages bypass the page cache. With {@code dedup} set,
+     * a row is dropped when any page of the crawl had it first.
+     * The result holds every page's result by URL, in completion order. With {@code stream}
+     * set, each page's result is sent as its own line as soon as it is done, followed by a
+     * summary line.
+     */
+    public ScrapeResult executeCrawl(ScrapeRequest request, ResultSink lines) {
+        return executeCrawl(request, lines, deadlineOf(request, System.nanoTime()));
+    }
+
+    /**
+     * Like {@link #executeCrawl(ScrapeRequest, ResultSink)}, under the given deadline. No page is
+     * started after it expires; pages under way are answered with the rows found so far and the
+     * crawl's status is then {@value #TIMEOUT} or {@value #CANCELLED}.
+     */
+    public ScrapeResult executeCrawl(ScrapeRequest request, ResultSink lines, Deadline deadline) {
+        long startTime = System.currentTimeMillis();
+        if (request.depth > MAX_CRAWL_DEPTH || request.pages > MAX_CRAWL_PAGES) {
+            return error(request.id, "Invalid request: a crawl goes at most " + MAX_CRAWL_DEPTH
+                    + " links deep and " + MAX_CRAWL_PAGES + " pages far");
+        }
+        int depth = request.depth > 0 ? request.depth : 1;
+        int pages = request.pages > 0 ? request.pages : 50;
+        int rows = request.rows > 0 ? request.rows : 10;
+        ExtractionProfile profile;
+        try {
+            profile = profiles.resolve(request.profile, request.url);
+        } catch (IllegalArgumentException e) {
+            return error(request.id, "Invalid request: " + e.getMessage());
+        }
+
+        boolean streamed = request.stream && lines != null;
+        Map<String, ScrapeResult> results = new LinkedHashMap<>();
+        try {
+            RowDeduplicator dedup = request.dedup ? new RowDeduplicator() : null;
+            crawler.crawl(request.url, profile, depth, pages, rows, dedup, deadline, page -> {
+                ScrapeResult result = pageResult(request.id, page, deadline);
+                if (streamed) {
+                    lines.accept(result);
+                } else {
+                    results.put(page.getUrl(), result);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error(request.id, "Crawl interrupted");
+        } catch (IOException e) {
+            return error(request.id, "Error sending crawl results: " + e.getMessage());
+        }
+
+        ScrapeResult result = new ScrapeResult();
+        result.setId(request.id);
+        result.setStatus(statusOf(deadline));
+        if (!streamed) {
+            result.setBatch(results);
+        }
+        result.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    private static ScrapeResult pageResult(String id, Crawler.Page page, Deadline deadline) {
+        ScrapeResult result;
+        if (page.getError() != null && deadline.isExpired()) {
+            result = expired(id, deadline, page.getRows() != null ? page.getRows() : List.of());
+        } else if (page.getError() != null) {
+            result = error(id, "Error during scraping: " + page.getError());
+        } else {
+            result = new ScrapeResult();
+            result.setId(id);
+            result.setStatus("success");
+            result.setResults(page.getRows());
+        }
+        result.setUrl(page.getUrl());
+        result.setProcessingTimeMs(page.getTimeMs());
+        return result;
+    }
+
+    private void scrapePage(BatchPage page, RowDeduplicator dedup, Deadline deadline, BlockingQueue<ScrapeResult> done) {
+        try {
+            ScrapeResult result;
+            try {
+                result = execute(page.request, null, dedup, deadline);
+            } catch (RuntimeException e) {
+                result = error(page.request.id, "Error during scraping: " + e.getMessage());
+            }
+            result.setUrl(page.request.url);
+            // Queued before the permit is released, so the batch sees it when it wakes up
+            done.add(result);
+        } finally {
+            limiter.release(page.host);
+        }
+    }
+
+    /**
+     * The request for one page of a batch, with the batch's settings as defaults
+     */
+    private static ScrapeRequest pageRequest(ScrapeRequest batch, ScrapeRequest item) {
+        ScrapeRequest page = new ScrapeRequest();
+        page.id = batch.id;
+        page.url = item.url;
+        page.threads = item.threads > 0 ? item.threads : batch.threads;
+        page.rows = item.rows > 0 ? item.rows : batch.rows;
+        page.profile = item.profile != null ? item.profile : batch.profile;
+        page.incremental = item.incremental || batch.incremental;
+        page.dedup = item.dedup;
+        return page;
+    }
+
+    /**
+     * Scrapes a website and pushes each row to the sink without collecting them.
+     * Streamed scrapes use the page cache but are not coalesced with other requests.
+     * @return Number of rows pushed
+     */
+    public int stream(String url, int threads, int rowsLimit, RowSink sink) throws Exception {
+        return stream(url, profiles.resolve(null, url), threads, rowsLimit, sink);
+    }
+
+    /**
+     * Like {@link #stream(String, int, int, RowSink)}, with the given extraction profile
+     */
+    public int stream(String url, ExtractionProfile profile, int threads, int rowsLimit, RowSink sink) throws Exception {
+        return stream(url, profile, threads, rowsLimit, null, sink);
+    }
+
+    /**
+     * Like {@link #stream(String, ExtractionProfile, int, int, RowSink)}, dropping rows the
+     * deduplicator has seen; cached rows are then not used, as they may hold such rows
+     * @param dedup Deduplicator to check the rows against, or null to keep duplicates
+     */
+    public int stream(String url, ExtractionProfile profile, int threads, int rowsLimit, RowDeduplicator dedup,
+                      RowSink sink) throws Exception {
+        return stream(url, profile, threads, rowsLimit, dedup, Deadline.none(), sink);
+    }
+
+    /**
+     * Like {@link #stream(String, ExtractionProfile, int, int, RowDeduplicator, RowSink)}, but
+     * stopped once the deadline expires, with the rows found until then pushed to the sink
+     * @throws Exception Also when the deadline expired
+     */
+    public int stream(String url, ExtractionProfile profile, int threads, int rowsLimit, RowDeduplicator dedup,
+                      Deadline deadline, RowSink sink) throws Exception {
+        try {
+            PageCache.Entry entry = cache.fetch(Urls.normalize(url), deadline);
+            List<String> cached = dedup == null ? entry.getRows(profile, rowsLimit) : null;
+            if (cached != null) {
+                for (String row : cached) {
+                    sink.accept(row);
+                }
+                return cached.size();
+            }
+            return scraper.scrape(entry.getPage().parse(deadline), profile, threads, rowsLimit, dedup, deadline, sink);
+        } catch (Exception e) {
+            throw new Exception("Scraping failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Scrapes a website while it is still downloading and stops reading it once rowsLimit
+     * rows have been found, dropping the connection to the origin.
+     * A fresh cached copy is parsed from memory instead. Pages streamed from the origin
+     * are usually left incomplete, so they are neither cached nor coalesced.
+     * @return Bytes of the page that were never read, or -1 if the origin sent no length
+     */
+    public long incremental(String url, int rowsLimit, RowSink sink) throws Exception {
+        return incremental(url, profiles.resolve(null, url), rowsLimit, sink);
+    }
+
+    /**
+     * Like {@link #incremental(String, int, RowSink)}, with the given extraction profile
+     */
+    public long incremental(String url, ExtractionProfile profile, int rowsLimit, RowSink sink) throws Exception {
+        return incremental(url, profile, rowsLimit, null, sink);
+    }
+
+    /**
+     * Like {@link #incremental(String, ExtractionProfile, int, RowSink)}, dropping rows the
+     * deduplicator has seen and reading on until rowsLimit new rows are found
+     * @param dedup Deduplicator to check the rows against, or null to keep duplicates
+     */
+    public long incremental(String url, ExtractionProfile profile, int rowsLimit, RowDeduplicator dedup,
+                            RowSink sink) throws Exception {
+        return incremental(url, profile, rowsLimit, dedup, Deadline.none(), sink);
+    }
+
+    /**
+     * Like {@link #incremental(String, ExtractionProfile, int, RowDeduplicator, RowSink)}, but
+     * stopped once the deadline expires, even while the origin stalls, with the rows found until
+     * then pushed to the sink
+     * @throws Exception Also when the deadline expired
+     */
+    public long incremental(String url, ExtractionProfile profile, int rowsLimit, RowDeduplicator dedup,
+                            Deadline deadline, RowSink sink) throws Exception {
+        String key = Urls.normalize(url);
+        try {
+            PageCache.Entry cached = cache.getIfFresh(key);
+            try (PageStream page = cached != null ? cached.getPage().openStream() : fetcher.open(key, deadline)) {
+                scraper.scrapeIncremental(page.reader(), page.getUrl(), profile, rowsLimit, dedup, deadline, sink);
+                return page.getBytesSkipped();
+            }
+        } catch (Exception e) {
+            throw new Exception("Scraping failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Builds the line that carries a single streamed row
+     */
+    public static ScrapeResult row(String id, String row) {
+        ScrapeResult result = new ScrapeResult();
+        result.setId(id);
+        result.setRow(row);
+        return result;
+    }
+
+    /**
+     * Builds an error result for the given request ID
+     */
+    public static ScrapeResult error(String id, String message) {
+        ScrapeResult result = new ScrapeResult();
+        result.setId(id);
+        result.setStatus("error");
+        result.setResults(List.of(message));
+        return result;
+    }
+
+    /**
+     * Builds the answer to a request whose deadline expired before it was done
+     * @param rows The rows found in time, or null if they were streamed
+     */
+    public static ScrapeResult expired(String id, Deadline deadline, List<String> rows) {
+        ScrapeResult result = new ScrapeResult();
+        result.setId(id);
+        result.setStatus(deadline.isCancelled() ? CANCELLED : TIMEOUT);
+        result.setResults(rows);
+        return result;
+    }
+
+    /**
+     * Builds the answer to a stats request: the server's requests in flight and admission
+     * totals, the latency percentiles of every {@link Metrics.Phase} and the counters, one line each
+     */
+    public ScrapeResult stats(String id, AdmissionController admission) {
+        Metrics metrics = Metrics.shared();
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("requests: inFlight=%d limit=%d admitted=%d rejected=%d shed=%d coalesced=%d",
+                admission.getInFlight(), admission.getLimit(), admission.getAdmitted(), admission.getRejected(),
+                admission.getShed(), getCoalesced()));
+        for (Metrics.Phase phase : Metrics.Phase.values()) {
+            lines.add(phase.getLabel() + ": " + metrics.histogram(phase).snapshot());
+        }
+        StringBuilder counters = new StringBuilder("counters:");
+        for (Metrics.Counter counter : Metrics.Counter.values()) {
+            counters.append(' ').append(counter.getLabel()).append('=').append(metrics.get(counter));
+        }
+        lines.add(counters.toString());
+        lines.add("fetches: " + fetcher.getScheduler().stats());
+        lines.add("cache: " + cache);
+
+        ScrapeResult result = new ScrapeResult();
+        result.setId(id);
+        result.setStatus("success");
+        result.setResults(lines);
+        return result;
+    }
+
+    private static void count(String status) {
+        if ("error".equals(status)) {
+            Metrics.shared().increment(Metrics.Counter.ERRORS);
+        } else if (TIMEOUT.equals(status)) {
+            Metrics.shared().increment(Metrics.Counter.TIMEOUTS);
+        } else if (CANCELLED.equals(status)) {
+            Metrics.shared().increment(Metrics.Counter.CANCELLED);
+        }
+    }
+
+    private static String statusOf(Deadline deadline) {
+        return !deadline.isExpired() ? "success" : deadline.isCancelled() ? CANCELLED : TIMEOUT;
+    }
+
+    /**
+     * Builds the answer to a request the server is too busy to take on
+     * @param retryAfterMs How long the client should wait before sending it again
+     */
+    public static ScrapeResult busy(String id, long retryAfterMs) {
+        ScrapeResult result = new ScrapeResult();
+        result.setId(id);
+        result.setStatus(AdmissionController.BUSY);
+        result.setRetryAfterMs(retryAfterMs);
+        result.setResults(List.of("Server busy, retry after " + retryAfterMs + " ms"));
+        return result;
+    }
+
+    private List<String> scrapeCached(String url, ExtractionProfile profile, int threads, int rowsLimit,
+                                      Deadline deadline) throws Exception {
+        PageCache.Entry entry = cache.fetch(url, deadline);
+        List<String> results = entry.getRows(profile, rowsLimit);
+        if (results == null) {
+            results = new ArrayList<>();
+            scraper.scrape(entry.getPage().parse(deadline), profile, threads, rowsLimit, null, deadline, results::add);
+            entry.putRows(profile, rowsLimit, results);
+        }
+        return results;
+    }
+
+    /**
+     * Waits for another request's scrape until it is done or the deadline expires
+     */
+    private static List<String> join(Flight flight, Deadline deadline) throws Exception {
+        CompletableFuture<List<String>> result = flight.result.copy();
+        Runnable expiry = deadline.onExpiry(() -> result.completeExceptionally(deadline.exceeded()));
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        } finally {
+            expiry.run();
+        }
+    }
+
+    public PageCache getCache() {
+        return cache;
+    }
+
+    public ProfileRegistry getProfiles() {
+        return profiles;
+    }
+
+    public FetchLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Number of requests that were answered by joining another request's scrape
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * A page of a batch waiting for a permit for its host
+     */
+    private static class BatchPage {
+        private final ScrapeRequest request;
+        private final String host;
+
+        BatchPage(ScrapeRequest request) {
+            this.request = request;
+            this.host = Urls.host(request.url);
+        }
+    }
+
+    private static class Flight {
+        private final ExtractionProfile profile;
+        private final int rowsLimit;
+        private final CompletableFuture<List<String>> result = new CompletableFuture<>();
+
+        Flight(ExtractionProfile profile, int rowsLimit) {
+            this.profile = profile;
+            this.rowsLimit = rowsLimit;
+        }
+    }
+}
@@ -1,52 +1,213 @@
 package bg.university.mpr2025.server;
 
+import bg.university.mpr2025.models.ScrapeCodec;
 import bg.university.mpr2025.models.ScrapeRequest;
 import bg.university.mpr2025.models.ScrapeResult;
-import bg.university.mpr2025.scrapper.ParallelScraper;
-import com.google.gson.Gson;
+import bg.university.mpr2025.scrapper.Deadline;
+import bg.university.mpr2025.utils.BufferPool;
+import bg.university.mpr2025.utils.Metrics;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class SelectorServer {
+/**
+ * Multi-reactor NIO server.
+ * An acceptor thread hands accepted connections round-robin to a configurable number
+ * of event loops, each with its own selector, connections and pooled read buffers. Scrapes run on
+ * a separate worker pool and their responses are written back by the owning event loop.
+ * Requests are admitted by the {@link AdmissionController} before they reach the workers, whose
+ * queue is bounded; a request that is not admitted is answered busy by the event loop.
+ * A connection that fails, or reaches its end of input before a one-shot request, cancels the
+ * requests still running for it.
+ * Stats requests are answered by the event loop right away. Writes are timed from when a worker
+ * hands the response to the loop until the socket has taken all of it.
+ */
+public class SelectorServer implements ScrapeServer {
     private static final String HOST = "localhost";
-    private static final int BUFFER_SIZE = 4096;
-    
+    private static final String CLIENT_GONE = "client disconnected";
+    // Stop reading from a connection while this much output is still waiting for the client
+    private static final int MAX_PENDING_OUTPUT = 1024 * 1024;
+
     private final int port;
     private final int workerThreads;
-    private final Gson gson = new Gson();
+    private final int eventLoopCount;
+    private final ScrapeService scrapeService = ScrapeService.shared();
+    private final AdmissionController admission = AdmissionController.shared();
+    private final AtomicInteger nextLoop = new AtomicInteger();
     private volatile boolean running;
-    private Selector selector;
     private ServerSocketChannel serverChannel;
+    private EventLoop[] eventLoops;
     private ExecutorService workerPool;
 
     public SelectorServer(int port, int workerThreads) {
+        this(port, workerThreads, 1);
+    }
+    
+    /**
+     * @param eventLoops Number of selector threads serving the accepted connections
+     */
+    public SelectorServer(int port, int workerThreads, int eventLoops) {
         this.port = port;
         this.workerThreads = workerThreads;
+        this.eventLoopCount = Math.max(1, eventLoops);
     }
-
+    
+    @Override
     public void start() {
-        System.out.println("SelectorServer starting on " + HOST + ":" + port);
+        System.out.println("SelectorServer starting on " + HOST + ":" + port + " with " + eventLoopCount + " event loop(s)");
         running = true;
-        workerPool = Executors.newFixedThreadPool(workerThreads);
+        workerPool = AdmissionController.newBoundedPool(workerThreads);
         
         try {
-            selector = Selector.open();
+            eventLoops = new EventLoop[eventLoopCount];
+            for (int i = 0; i < eventLoopCount; i++) {
+                eventLoops[i] = new EventLoop(i);
+                eventLoops[i].thread.start();
+            }
+            
             serverChannel = ServerSocketChannel.open();
-            serverChannel.bind(new InetSocketAddress(HOST, port));
-            serverChannel.configureBlocking(false);
-            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            serverChannel.bind(new InetSocketAddress(HOST, port), 1024);
             
+            // The acceptor blocks in accept() and only distributes the new connections
+            while (running) {
+                try {
+                    SocketChannel clientChannel = serverChannel.accept();
+                    clientChannel.configureBlocking(false);
+                    EventLoop loop = eventLoops[Math.floorMod(nextLoop.getAndIncrement(), eventLoopCount)];
+                    loop.register(clientChannel);
+                } catch (ClosedChannelException e) {
+                    break;
+                } catch (IOException e) {
+                    if (running) {
+                        System.err.println("Error accepting client connection: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Failed to start SelectorServer: " + e.getMessage());
+            }
+        } finally {
+            stop();
+        }
+    }
+    
+    private void processRequest(Connection connection, ScrapeRequest request, AdmissionController.Ticket ticket,
+                                Deadline deadline) {
+        try {
+            if (!ticket.start()) {
+                connection.loop.send(connection, admission.busy(request == null ? null : request.id));
+                return;
+            }
+            try {
+                ResultSink lines = line -> connection.loop.sendRow(connection, line);
+                connection.loop.send(connection, scrapeService.execute(request, lines, deadline));
+            } finally {
+                // A request cancelled early says nothing about how long requests take
+                if (deadline.isCancelled()) {
+                    ticket.cancel();
+                } else {
+                    ticket.finish();
+                }
+            }
+        } finally {
+            connection.running.remove(deadline);
+        }
+    }
+    
+    @Override
+    public void stop() {
+        running = false;
+        if (serverChannel != null && serverChannel.isOpen()) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing server channel: " + e.getMessage());
+            }
+        }
+        if (eventLoops != null) {
+            for (EventLoop loop : eventLoops) {
+                if (loop != null) {
+                    loop.stop();
+                }
+            }
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+    }
+    
+    /**
+     * One selector thread with its own connections. Other threads talk to it only
+     * through its queues followed by a wakeup.
+     */
+    private class EventLoop implements Runnable {
+        private final Thread thread;
+        private final Selector selector;
+        private final Queue<SocketChannel> newConnections = new ConcurrentLinkedQueue<>();
+        // Responses handed back by the workers; only this loop's thread touches the channels
+        private final Queue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+        // Decodes on this loop's thread; encoding is thread-safe and runs on the workers
+        private final ScrapeCodec codec = new ScrapeCodec(BufferPool.shared());
+        
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "selector-loop-" + index);
+            this.thread.setDaemon(true);
+        }
+        
+        void register(SocketChannel channel) {
+            newConnections.add(channel);
+            selector.wakeup();
+        }
+        
+        /**
+         * Hands a response to this loop for writing. Safe to call from any thread.
+         */
+        void send(Connection connection, ScrapeResult result) {
+            enqueue(new PendingWrite(connection, codec.encode(result), true));
+        }
+        
+        /**
+         * Hands one streamed line to this loop; the request stays in flight until {@link #send} is called
+         */
+        void sendRow(Connection connection, ScrapeResult line) {
+            enqueue(new PendingWrite(connection, codec.encode(line), false));
+        }
+        
+        private void enqueue(PendingWrite write) {
+            pendingWrites.add(write);
+            selector.wakeup();
+        }
+        
+        @Override
+        public void run() {
+            try {
+                loop();
+            } finally {
+                closeAll();
+            }
+        }
+        
+        private void loop() {
             while (running) {
                 try {
                     selector.select();
+                    registerNewConnections();
+                    registerPendingWrites();
+                    
                     Set<SelectionKey> selectedKeys = selector.selectedKeys();
                     Iterator<SelectionKey> iter = selectedKeys.iterator();
                     
@@ -58,124 +219,307 @@ public class SelectorServer {
                             continue;
                         }
                         
-                        if (key.isAcceptable()) {
-                            acceptClient(key);
-                        } else if (key.isReadable()) {
+                        if (key.isWritable()) {
+                            writeToClient(key);
+                        }
+                        if (key.isValid() && key.isReadable()) {
                             readFromClient(key);
                         }
                     }
+                } catch (ClosedSelectorException e) {
+                    return;
                 } catch (IOException e) {
                     if (running) {
                         System.err.println("Error in selector loop: " + e.getMessage());
                     }
                 }
             }
-        } catch (IOException e) {
-            System.err.println("Failed to start SelectorServer: " + e.getMessage());
-        } finally {
-            stop();
         }
-    }
-    
-    private void acceptClient(SelectionKey key) throws IOException {
-        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
-        SocketChannel clientChannel = serverChannel.accept();
-        if (clientChannel != null) {
-            clientChannel.configureBlocking(false);
-            clientChannel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(BUFFER_SIZE));
-            System.out.println("Client connected: " + clientChannel.getRemoteAddress());
+        
+        private void registerNewConnections() {
+            SocketChannel clientChannel;
+            while ((clientChannel = newConnections.poll()) != null) {
+                try {
+                    SelectionKey clientKey = clientChannel.register(selector, SelectionKey.OP_READ);
+                    clientKey.attach(new Connection(this, clientKey));
+                    System.out.println("Client connected: " + clientChannel.getRemoteAddress());
+                } catch (IOException e) {
+                    System.err.println("Error registering client channel: " + e.getMessage());
+                    try {
+                        clientChannel.close();
+                    } catch (IOException ex) {
+                        System.err.println("Error closing client channel: " + ex.getMessage());
+                    }
+                }
+            }
         }
-    }
-    
-    private void readFromClient(SelectionKey key) {
-        SocketChannel clientChannel = (SocketChannel) key.channel();
-        ByteBuffer buffer = (ByteBuffer) key.attachment();
         
-        try {
-            int bytesRead = clientChannel.read(buffer);
-            if (bytesRead == -1) {
-                clientChannel.close();
+        private void readFromClient(SelectionKey key) {
+            SocketChannel clientChannel = (SocketChannel) key.channel();
+            Connection connection = (Connection) key.attachment();
+            FrameReader frames = connection.frames;
+            
+            try {
+                int bytesRead = frames.read(clientChannel);
+                if (bytesRead == -1) {
+                    // After a one-shot request the client may close its side; that only ends the requests
+                    connection.inputClosed(!connection.requestsEnded);
+                    return;
+                }
+                
+                // Dispatch every complete request line; a persistent client may pipeline several
+                ByteBuffer frame;
+                while ((frame = frames.nextFrame()) != null) {
+                    // Nothing after a one-shot request is taken, but reading goes on to notice a hang-up
+                    if (connection.requestsEnded || FrameReader.isBlank(frame)) {
+                        continue;
+                    }
+                    connection.inFlight++;
+                    ScrapeRequest request;
+                    try {
+                        request = codec.decodeRequest(frame);
+                    } catch (IllegalArgumentException e) {
+                        connection.inputClosed = true;
+                        send(connection, ScrapeService.error(null, "Invalid request format: " + e.getMessage()));
+                        return;
+                    }
+                    // A one-shot request is the connection's last; it closes once all are answered
+                    connection.requestsEnded = request == null || !request.keepAlive;
+                    dispatch(connection, request);
+                }
+                
+                if (frames.isOverflowing()) {
+                    // Stop reading and close once everything already dispatched has been answered
+                    connection.inputClosed = true;
+                    if (connection.requestsEnded) {
+                        connection.flush();
+                    } else {
+                        connection.inFlight++;
+                        send(connection, ScrapeService.error(null, "Request too large"));
+                    }
+                }
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+        
+        /**
+         * Hands an admitted request to the workers, or answers it busy, or with the stats, right away
+         */
+        private void dispatch(Connection connection, ScrapeRequest request) {
+            String id = request == null ? null : request.id;
+            if (request != null && request.stats) {
+                // Answered by the loop without admission, so it works while the server is overloaded
+                send(connection, scrapeService.stats(id, admission));
                 return;
             }
-            
-            String requestData = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
-            if (requestData.endsWith("\n")) {
-                buffer.clear();
-                workerPool.submit(() -> processRequest(clientChannel, requestData.trim()));
+            long arrivedAt = System.nanoTime();
+            AdmissionController.Ticket ticket = admission.tryAcquire(arrivedAt);
+            if (ticket == null) {
+                send(connection, admission.busy(id));
+                return;
             }
-        } catch (IOException e) {
+            Deadline deadline = ScrapeService.deadlineOf(request, arrivedAt);
+            connection.running.add(deadline);
             try {
-                clientChannel.close();
-            } catch (IOException ex) {
-                System.err.println("Error closing client channel: " + ex.getMessage());
+                workerPool.execute(() -> processRequest(connection, request, ticket, deadline));
+            } catch (RejectedExecutionException e) {
+                connection.running.remove(deadline);
+                ticket.cancel();
+                send(connection, admission.busy(id));
             }
         }
-    }
-    
-    private void processRequest(SocketChannel clientChannel, String requestJson) {
-        try {
-            ScrapeRequest request = gson.fromJson(requestJson, ScrapeRequest.class);
-            
-            if (request == null || request.url == null || request.url.trim().isEmpty()) {
-                sendErrorResponse(clientChannel, "Invalid request: URL is required");
+        
+        private void writeToClient(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                connection.flush();
+            } catch (IOException e) {
+                Metrics.shared().increment(Metrics.Counter.WRITE_ERRORS);
+                connection.close();
+            }
+        }
+        
+        /**
+         * Moves responses queued by the workers onto their connections
+         */
+        private void registerPendingWrites() {
+            PendingWrite write;
+            while ((write = pendingWrites.poll()) != null) {
+                Connection connection = write.connection;
+                if (!connection.key.isValid()) {
+                    codec.release(write.data);
+                    if (write.last) {
+                        Metrics.shared().increment(Metrics.Counter.WRITE_ERRORS);
+                    }
+                    continue; // client went away while the request was processed
+                }
+                if (write.last) {
+                    connection.inFlight--;
+                }
+                if (connection.outbound.isEmpty()) {
+                    connection.writeStartedAt = write.queuedAt;
+                }
+                for (ByteBuffer data : write.data) {
+                    connection.outbound.add(data);
+                    connection.pendingBytes += data.remaining();
+                }
+                try {
+                    connection.flush();
+                } catch (IOException e) {
+                    Metrics.shared().increment(Metrics.Counter.WRITE_ERRORS);
+                    connection.close();
+                }
+            }
+        }
+        
+        /**
+         * Wakes the loop so that it sees the server stopping and closes everything it owns.
+         * Safe to call from any thread, any number of times.
+         */
+        void stop() {
+            selector.wakeup();
+        }
+        
+        /**
+         * Closes the loop's connections and its selector; runs on the loop's own thread once it
+         * has left the select loop, so nothing is closed under a select in progress
+         */
+        private void closeAll() {
+            if (!selector.isOpen()) {
                 return;
             }
-            
-            ParallelScraper scraper = new ParallelScraper();
-            int threads = request.threads > 0 ? request.threads : 1;
-            int rows = request.rows > 0 ? request.rows : 10;
-            
-            try {
-                long startTime = System.currentTimeMillis();
-                var results = scraper.scrape(request.url, threads, rows);
-                long processingTime = System.currentTimeMillis() - startTime;
-                
-                ScrapeResult result = new ScrapeResult();
-                result.setStatus("success");
-                result.setProcessingTimeMs(processingTime);
-                result.setResults(results);
-                
-                String response = gson.toJson(result) + "\n";
-                clientChannel.write(ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8)));
-                
-            } catch (Exception e) {
-                sendErrorResponse(clientChannel, "Error during scraping: " + e.getMessage());
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            SocketChannel channel;
+            while ((channel = newConnections.poll()) != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing client channel: " + e.getMessage());
+                }
             }
-            
-        } catch (Exception e) {
-            sendErrorResponse(clientChannel, "Invalid request format: " + e.getMessage());
-        } finally {
             try {
-                clientChannel.close();
+                selector.close();
             } catch (IOException e) {
-                System.err.println("Error closing client channel: " + e.getMessage());
+                System.err.println("Error closing selector: " + e.getMessage());
             }
         }
     }
     
-    private void sendErrorResponse(SocketChannel channel, String errorMessage) {
-        try {
-            ScrapeResult errorResult = new ScrapeResult();
-            errorResult.setStatus("error");
-            errorResult.setResults(java.util.List.of(errorMessage));
-            String response = gson.toJson(errorResult) + "\n";
-            channel.write(ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8)));
-        } catch (IOException e) {
-            System.err.println("Error sending error response: " + e.getMessage());
+    /**
+     * Per-connection state owned by its event loop
+     */
+    private static class Connection {
+        private final EventLoop loop;
+        private final SelectionKey key;
+        private final FrameReader frames = new FrameReader(BufferPool.shared());
+        private final Queue<ByteBuffer> outbound = new ArrayDeque<>();
+        private long pendingBytes;
+        // When the oldest output still queued was handed to the loop
+        private long writeStartedAt;
+        // Requests dispatched to the workers and not yet answered
+        private int inFlight;
+        private boolean inputClosed;
+        // Whether a one-shot request has been read: no more requests are taken, the connection
+        // closes once every one is answered, and the end of input is no hang-up
+        private boolean requestsEnded;
+        // Deadlines of the requests being scraped; added by the loop, removed by the workers
+        private final Set<Deadline> running = ConcurrentHashMap.newKeySet();
+        
+        Connection(EventLoop loop, SelectionKey key) {
+            this.loop = loop;
+            this.key = key;
         }
-    }
-    
-    public void stop() {
-        running = false;
-        if (selector != null && selector.isOpen()) {
+        
+        /**
+         * Writes as much queued output as the socket accepts. Leftovers keep OP_WRITE
+         * interest, and reading pauses while the client is too slow to keep up.
+         * Once the output is all written, the time since the oldest of it was handed to the
+         * loop is recorded as one write.
+         */
+        void flush() throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            long bytes = 0;
+            while (!outbound.isEmpty()) {
+                ByteBuffer head = outbound.peek();
+                int written = channel.write(head);
+                pendingBytes -= written;
+                bytes += written;
+                if (head.hasRemaining()) {
+                    break; // socket send buffer is full
+                }
+                BufferPool.shared().release(outbound.poll());
+            }
+            Metrics.shared().add(Metrics.Counter.BYTES_OUT, bytes);
+            
+            if (outbound.isEmpty()) {
+                if (writeStartedAt != 0) {
+                    Metrics.shared().recordSince(Metrics.Phase.WRITE, writeStartedAt);
+                    writeStartedAt = 0;
+                }
+                if ((inputClosed || requestsEnded) && inFlight == 0) {
+                    close();
+                    return;
+                }
+                key.interestOps(inputClosed ? 0 : SelectionKey.OP_READ);
+            } else {
+                int ops = SelectionKey.OP_WRITE;
+                if (!inputClosed && pendingBytes < MAX_PENDING_OUTPUT) {
+                    ops |= SelectionKey.OP_READ;
+                }
+                key.interestOps(ops);
+            }
+        }
+        
+        /**
+         * The client finished sending: the connection is closed once every dispatched request
+         * has been answered
+         * @param hungUp Whether the client went away, so that the requests it still waits for
+         * are cancelled
+         */
+        void inputClosed(boolean hungUp) throws IOException {
+            inputClosed = true;
+            if (hungUp) {
+                cancelRunning();
+            }
+            flush();
+        }
+        
+        private void cancelRunning() {
+            for (Deadline deadline : running) {
+                deadline.cancel(CLIENT_GONE);
+            }
+        }
+        
+        void close() {
+            cancelRunning();
+            key.cancel();
             try {
-                selector.close();
+                key.channel().close();
             } catch (IOException e) {
-                System.err.println("Error closing selector: " + e.getMessage());
+                System.err.println("Error closing client channel: " + e.getMessage());
+            }
+            frames.close();
+            ByteBuffer data;
+            while ((data = outbound.poll()) != null) {
+                BufferPool.shared().release(data);
             }
         }
-        if (workerPool != null) {
-            workerPool.shutdown();
+    }
+    
+    private static class PendingWrite {
+        private final Connection connection;
+        private final List<ByteBuffer> data;
+        // Whether this is the final line of its request
+        private final boolean last;
+        private final long queuedAt = System.nanoTime();
+        
+        PendingWrite(Connection connection, List<ByteBuffer> data, boolean last) {
+            this.connection = connection;
+            this.data = data;
+            this.last = last;
         }
     }
 }
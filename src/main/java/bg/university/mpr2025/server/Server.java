@@ -1,10 +1,10 @@
 package bg.university.mpr2025.server;
 
+import bg.university.mpr2025.models.ScrapeCodec;
 import bg.university.mpr2025.models.ScrapeRequest;
 import bg.university.mpr2025.models.ScrapeResult;
-import bg.university.mpr2025.scrapper.ParallelScraper;
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import bg.university.mpr2025.utils.BufferPool;
+import bg.university.mpr2025.utils.Metrics;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -14,31 +14,39 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.List;
 
-public class Server {
-    private static final int BUFFER_SIZE = 1024;
+/**
+ * Single-threaded NIO server that scrapes each request on its selector thread.
+ * Ready connections are served one after another, so a request that was ready with others
+ * waits for them; one that waited longer than the {@link AdmissionController} allows, counted
+ * from when the selector reported it, is answered busy instead of scraped. Deadlines count from
+ * then as well; a client hanging up is only noticed once its answer fails to send, as nothing
+ * is read while a request is scraped.
+ */
+public class Server implements ScrapeServer {
     private static final String HOST = "localhost";
 
     private final int port;
-    private final Gson gson = new Gson();
+    private final ScrapeCodec codec = new ScrapeCodec(BufferPool.shared());
+    private final ScrapeService scrapeService = ScrapeService.shared();
+    private final AdmissionController admission = AdmissionController.shared();
+    private final Metrics metrics = Metrics.shared();
 
     private volatile boolean running;
     private Selector selector;
-    private ByteBuffer buffer;
 
     public Server(int port) {
         this.port = port;
     }
 
+    @Override
     public void start() {
         System.out.println("Server starting on " + HOST + ":" + port);
         try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
             selector = Selector.open();
             configureServerSocketChannel(serverSocketChannel, selector);
-            buffer = ByteBuffer.allocate(BUFFER_SIZE);
             running = true;
 
             while (running) {
@@ -47,6 +55,7 @@ public class Server {
                     if (ready == 0) {
                         continue;
                     }
+                    long selectedAt = System.nanoTime();
 
                     Iterator<SelectionKey> it = selector.selectedKeys().iterator();
                     while (it.hasNext()) {
@@ -60,15 +69,7 @@ public class Server {
                         if (key.isAcceptable()) {
                             accept(selector, key);
                         } else if (key.isReadable()) {
-                            SocketChannel clientChannel = (SocketChannel) key.channel();
-                            String requestJson = readFromClient(clientChannel);
-                            if (requestJson == null) {
-                                continue; // client closed
-                            }
-                            System.out.println("Received request: " + requestJson.trim());
-
-                            String response = buildResponseJson(requestJson);
-                            writeToClientAndClose(clientChannel, response + "\n");
+                            handleRead(key, selectedAt);
                         }
                     }
                 } catch (IOException e) {
@@ -80,6 +81,7 @@ public class Server {
         }
     }
 
+    @Override
     public void stop() {
         running = false;
         if (selector != null && selector.isOpen()) {
@@ -93,26 +95,38 @@ public class Server {
         channel.register(selector, SelectionKey.OP_ACCEPT);
     }
 
-    private String readFromClient(SocketChannel clientChannel) throws IOException {
-        buffer.clear();
-        int bytesRead = clientChannel.read(buffer);
-        if (bytesRead < 0) {
-            clientChannel.close();
-            return null;
+    /**
+     * Encodes and writes one line, recording the time the write took and the bytes sent in {@link Metrics}
+     */
+    private void writeToClient(SocketChannel clientChannel, ScrapeResult result) throws IOException {
+        List<ByteBuffer> data = codec.encode(result);
+        long start = System.nanoTime();
+        long bytes = 0;
+        try {
+            for (ByteBuffer out : data) {
+                bytes += out.remaining();
+                while (out.hasRemaining()) {
+                    clientChannel.write(out);
+                }
+            }
+            metrics.recordSince(Metrics.Phase.WRITE, start);
+            metrics.add(Metrics.Counter.BYTES_OUT, bytes);
+        } catch (IOException e) {
+            metrics.increment(Metrics.Counter.WRITE_ERRORS);
+            throw e;
+        } finally {
+            codec.release(data);
         }
-        buffer.flip();
-        byte[] data = new byte[buffer.remaining()];
-        buffer.get(data);
-        return new String(data, StandardCharsets.UTF_8);
     }
 
-    private void writeToClientAndClose(SocketChannel clientChannel, String output) throws IOException {
-        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
-        ByteBuffer out = ByteBuffer.wrap(bytes);
-        while (out.hasRemaining()) {
-            clientChannel.write(out);
-        }
-        clientChannel.close();
+    private void writeToClientAndClose(SelectionKey key, ScrapeResult result) throws IOException {
+        writeToClient((SocketChannel) key.channel(), result);
+        close(key);
+    }
+
+    private void close(SelectionKey key) throws IOException {
+        ((FrameReader) key.attachment()).close();
+        key.channel().close();
     }
 
     private void accept(Selector selector, SelectionKey key) throws IOException {
@@ -120,45 +134,64 @@ public class Server {
         SocketChannel client = serverChannel.accept();
         if (client != null) {
             client.configureBlocking(false);
-            client.register(selector, SelectionKey.OP_READ);
+            client.register(selector, SelectionKey.OP_READ, new FrameReader(BufferPool.shared()));
             System.out.println("Client connected: " + client.getRemoteAddress());
         }
     }
 
-    private String buildResponseJson(String requestJson) {
-        ScrapeResult result = new ScrapeResult();
-        long startTime = System.currentTimeMillis();
-        
-        try {
-            // Parse the request
-            ScrapeRequest request = gson.fromJson(requestJson, ScrapeRequest.class);
-            
-            // Validate the request
-            if (request == null || request.url == null || request.url.trim().isEmpty()) {
-                result.setStatus("error");
-                result.setResults(List.of("URL is required"));
-            } else {
-                // Use ParallelScraper to get the results
-                ParallelScraper scraper = new ParallelScraper();
-                int threads = request.threads > 0 ? request.threads : 1;
-                int rows = request.rows > 0 ? request.rows : 10; // Default to 10 rows if not specified
-                
-                try {
-                    List<String> scrapedResults = scraper.scrape(request.url, threads, rows);
-                    result.setStatus("success");
-                    result.setResults(scrapedResults);
-                } catch (Exception e) {
-                    result.setStatus("error");
-                    result.setResults(List.of("Error during scraping: " + e.getMessage()));
-                }
+    /**
+     * @param selectedAt When the selector reported the key ready, taken as its requests' arrival
+     */
+    private void handleRead(SelectionKey key, long selectedAt) throws IOException {
+        SocketChannel clientChannel = (SocketChannel) key.channel();
+        FrameReader frames = (FrameReader) key.attachment();
+        if (frames.read(clientChannel) < 0) {
+            close(key);
+            return; // client closed
+        }
+
+        // Requests are newline-terminated; a persistent client may send several at once
+        ByteBuffer frame;
+        while ((frame = frames.nextFrame()) != null) {
+            if (FrameReader.isBlank(frame)) {
+                continue;
             }
-        } catch (JsonSyntaxException e) {
-            result.setStatus("error");
-            result.setResults(List.of("Invalid JSON request: " + e.getMessage()));
+
+            ScrapeRequest request;
+            try {
+                request = codec.decodeRequest(frame);
+            } catch (IllegalArgumentException e) {
+                writeToClientAndClose(key, ScrapeService.error(null, "Invalid JSON request: " + e.getMessage()));
+                return;
+            }
+            System.out.println("Received request: " + (request == null ? null : request.url));
+
+            ScrapeResult response = execute(request, clientChannel, selectedAt);
+            if (request == null || !request.keepAlive) {
+                writeToClientAndClose(key, response);
+                return;
+            }
+            writeToClient(clientChannel, response);
+        }
+
+        if (frames.isOverflowing()) {
+            writeToClientAndClose(key, ScrapeService.error(null, "Request too large"));
+        }
+    }
+
+    private ScrapeResult execute(ScrapeRequest request, SocketChannel clientChannel, long arrivedAt) {
+        if (request != null && request.stats) {
+            return scrapeService.stats(request.id, admission);
+        }
+        AdmissionController.Ticket ticket = admission.tryAcquire(arrivedAt);
+        if (ticket == null || !ticket.start()) {
+            return admission.busy(request == null ? null : request.id);
+        }
+        try {
+            return scrapeService.execute(request, line -> writeToClient(clientChannel, line),
+                    ScrapeService.deadlineOf(request, arrivedAt));
+        } finally {
+            ticket.finish();
         }
-        
-        // Calculate processing time
-        result.setProcessingTimeMs(System.currentTimeMillis() - startTime);
-        return gson.toJson(result);
     }
 }
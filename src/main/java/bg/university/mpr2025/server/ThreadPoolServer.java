@@ -1,37 +1,61 @@
 package bg.university.mpr2025.server;
 
+import bg.university.mpr2025.models.ScrapeCodec;
 import bg.university.mpr2025.models.ScrapeRequest;
 import bg.university.mpr2025.models.ScrapeResult;
-import bg.university.mpr2025.scrapper.ParallelScraper;
-import com.google.gson.Gson;
+import bg.university.mpr2025.scrapper.Deadline;
+import bg.university.mpr2025.utils.BufferPool;
+import bg.university.mpr2025.utils.Metrics;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class ThreadPoolServer {
+/**
+ * Blocking server that serves each connection on a thread of a fixed pool.
+ * Requests are admitted by the {@link AdmissionController}; the pools' queues are bounded,
+ * and a connection or request that finds them full is answered busy instead of waiting.
+ * Requests run on a second pool while the connection's thread keeps reading, so a client that
+ * hangs up cancels the requests it was waiting for. Stats requests are answered by the
+ * connection's thread right away.
+ */
+public class ThreadPoolServer implements ScrapeServer {
     private static final String HOST = "localhost";
+    private static final String CLIENT_GONE = "client disconnected";
     
     private final int port;
     private final int threadPoolSize;
-    private final Gson gson = new Gson();
+    private final ScrapeService scrapeService = ScrapeService.shared();
+    private final AdmissionController admission = AdmissionController.shared();
+    private final Metrics metrics = Metrics.shared();
     private volatile boolean running;
     private ServerSocket serverSocket;
     private ExecutorService executor;
+    private ExecutorService requestExecutor;
 
     public ThreadPoolServer(int port, int threadPoolSize) {
         this.port = port;
         this.threadPoolSize = threadPoolSize;
     }
 
+    @Override
     public void start() {
-        System.out.println("ThreadPool Server starting on " + HOST + ":" + port);
+        System.out.println(name() + " starting on " + HOST + ":" + port);
         running = true;
-        executor = Executors.newFixedThreadPool(threadPoolSize);
+        executor = createExecutor();
+        requestExecutor = createRequestExecutor();
         
         try (ServerSocket serverSocket = new ServerSocket(port)) {
             this.serverSocket = serverSocket;
@@ -39,7 +63,12 @@ public class ThreadPoolServer {
             while (running) {
                 try {
                     Socket clientSocket = serverSocket.accept();
-                    executor.submit(() -> handleClient(clientSocket));
+                    long acceptedAt = System.nanoTime();
+                    try {
+                        executor.execute(() -> handleClient(clientSocket, acceptedAt));
+                    } catch (RejectedExecutionException e) {
+                        refuse(clientSocket);
+                    }
                 } catch (IOException e) {
                     if (running) {
                         System.err.println("Error accepting client connection: " + e.getMessage());
@@ -53,11 +82,15 @@ public class ThreadPoolServer {
         }
     }
 
+    @Override
     public void stop() {
         running = false;
         if (executor != null) {
             executor.shutdown();
         }
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
         if (serverSocket != null) {
             try {
                 serverSocket.close();
@@ -67,50 +100,167 @@ public class ThreadPoolServer {
         }
     }
 
-    private void handleClient(Socket clientSocket) {
-        try (BufferedReader in = new BufferedReader(
-                new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8));
-             BufferedWriter out = new BufferedWriter(
-                     new OutputStreamWriter(clientSocket.getOutputStream(), StandardCharsets.UTF_8))) {
+    protected String name() {
+        return "ThreadPool Server";
+    }
 
-            String requestJson = in.readLine();
-            if (requestJson == null) {
-                return;
-            }
-            
-            ScrapeRequest request = gson.fromJson(requestJson, ScrapeRequest.class);
-            
-            // Validate request
-            if (request == null || request.url == null || request.url.trim().isEmpty()) {
-                sendErrorResponse(out, "Invalid request: URL is required");
-                return;
-            }
-            
-            // Process the request
-            ParallelScraper scraper = new ParallelScraper();
-            int threads = request.threads > 0 ? request.threads : 1;
-            int rows = request.rows > 0 ? request.rows : 10;
-            
+    /**
+     * Creates the executor that runs one task per accepted connection.
+     * It may reject connections when it is full; they are then answered busy.
+     */
+    protected ExecutorService createExecutor() {
+        return AdmissionController.newBoundedPool(threadPoolSize);
+    }
+
+    /**
+     * Creates the executor that scrapes the requests, kept apart from the connection threads
+     * so readers cannot starve the scrapes.
+     * It may reject requests when it is full; they are then answered busy.
+     */
+    protected ExecutorService createRequestExecutor() {
+        return AdmissionController.newBoundedPool(threadPoolSize);
+    }
+
+    /**
+     * Answers a connection no thread can take with a busy result and closes it
+     */
+    private void refuse(Socket clientSocket) {
+        ScrapeCodec codec = new ScrapeCodec(BufferPool.shared());
+        try (Socket socket = clientSocket) {
+            sendResponse(new Output(socket), codec, admission.busy(null));
+        } catch (IOException e) {
+            System.err.println("Error refusing client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the connection's requests and hands each admitted one to the request executor, so
+     * this thread goes on reading and notices when the client hangs up or stops sending; the
+     * requests still being scraped for it are then cancelled. After a one-shot request nothing
+     * more is read but the end of the input, which the client may send by closing its side or
+     * its task brings about once it has answered; that end is not a hang-up, so the one-shot
+     * request and the earlier ones of the connection still get their answers. A failed read
+     * always is.
+     * @param acceptedAt When the connection was accepted; its first request is taken to have
+     * arrived then, so the time it waited for a thread counts against it
+     */
+    private void handleClient(Socket clientSocket, long acceptedAt) {
+        // Requests of this connection still being scraped, and their deadlines
+        Phaser pending = new Phaser(1);
+        Set<Deadline> running = ConcurrentHashMap.newKeySet();
+        // Set before the server ends the input itself, so a read failing after that is not taken for a hang-up
+        AtomicBoolean inputStopped = new AtomicBoolean();
+        FrameReader frames = new FrameReader(BufferPool.shared());
+        ScrapeCodec codec = new ScrapeCodec(BufferPool.shared());
+        try {
+            ReadableByteChannel in = Channels.newChannel(clientSocket.getInputStream());
+            Output out = new Output(clientSocket);
+
+            boolean firstRead = true;
+            boolean oneShot = false;
+            boolean hungUp = false;
             try {
-                long startTime = System.currentTimeMillis();
-                List<String> results = scraper.scrape(request.url, threads, rows);
-                long processingTime = System.currentTimeMillis() - startTime;
-                
-                ScrapeResult result = new ScrapeResult();
-                result.setStatus("success");
-                result.setProcessingTimeMs(processingTime);
-                result.setResults(results);
-                
-                out.write(gson.toJson(result) + "\n");
-                out.flush();
-                
-            } catch (Exception e) {
-                sendErrorResponse(out, "Error during scraping: " + e.getMessage());
+                reading:
+                while (true) {
+                    if (frames.read(in) < 0) {
+                        // After a one-shot request the end of input only means no more requests,
+                        // whether the client half-closed or the server ended the input itself
+                        hungUp = !oneShot;
+                        break;
+                    }
+                    // Requests arrive when they are read, except that the first ones waited for this thread
+                    long arrivedAt = firstRead ? acceptedAt : System.nanoTime();
+                    firstRead = false;
+                    ByteBuffer frame;
+                    while ((frame = frames.nextFrame()) != null) {
+                        if (oneShot || FrameReader.isBlank(frame)) {
+                            continue;
+                        }
+                        
+                        ScrapeRequest request;
+                        try {
+                            request = codec.decodeRequest(frame);
+                        } catch (IllegalArgumentException e) {
+                            sendResponse(out, codec, ScrapeService.error(null, "Invalid request format: " + e.getMessage()));
+                            break reading;
+                        }
+                        
+                        if (request != null && request.stats) {
+                            // Answered here, without admission, so it works while the server is overloaded
+                            sendResponse(out, codec, scrapeService.stats(request.id, admission));
+                            oneShot = !request.keepAlive;
+                            if (oneShot) {
+                                break reading;
+                            }
+                            continue;
+                        }
+                        
+                        AdmissionController.Ticket ticket = admission.tryAcquire(arrivedAt);
+                        Deadline deadline = ScrapeService.deadlineOf(request, arrivedAt);
+                        String id = request == null ? null : request.id;
+                        // A one-shot request is answered and the connection closed; a persistent
+                        // one is answered as soon as it is done, alongside the others
+                        oneShot = request == null || !request.keepAlive;
+                        
+                        if (ticket == null) {
+                            sendResponse(out, codec, admission.busy(id));
+                            if (oneShot) {
+                                break reading;
+                            }
+                            continue;
+                        }
+                        
+                        boolean last = oneShot;
+                        pending.register();
+                        running.add(deadline);
+                        try {
+                            requestExecutor.execute(() -> {
+                                try {
+                                    sendResponse(out, codec, execute(request, ticket, deadline, out, codec));
+                                } catch (IOException e) {
+                                    System.err.println("Error sending response: " + e.getMessage());
+                                } finally {
+                                    running.remove(deadline);
+                                    pending.arriveAndDeregister();
+                                    if (last) {
+                                        stopReading(clientSocket, inputStopped);
+                                    }
+                                }
+                            });
+                        } catch (RejectedExecutionException e) {
+                            running.remove(deadline);
+                            pending.arriveAndDeregister();
+                            ticket.cancel();
+                            sendResponse(out, codec, admission.busy(id));
+                            if (oneShot) {
+                                break reading;
+                            }
+                        }
+                    }
+                    
+                    if (frames.isOverflowing()) {
+                        if (!oneShot) {
+                            sendResponse(out, codec, ScrapeService.error(null, "Request too large"));
+                        }
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                hungUp = !inputStopped.get();
+                throw e;
+            } finally {
+                if (hungUp) {
+                    for (Deadline deadline : running) {
+                        deadline.cancel(CLIENT_GONE);
+                    }
+                }
+                pending.arriveAndAwaitAdvance();
             }
             
         } catch (Exception e) {
             System.err.println("Error handling client: " + e.getMessage());
         } finally {
+            frames.close();
             try {
                 clientSocket.close();
             } catch (IOException e) {
@@ -119,11 +269,89 @@ public class ThreadPoolServer {
         }
     }
     
-    private void sendErrorResponse(BufferedWriter out, String errorMessage) throws IOException {
-        ScrapeResult errorResult = new ScrapeResult();
-        errorResult.setStatus("error");
-        errorResult.setResults(List.of(errorMessage));
-        out.write(gson.toJson(errorResult) + "\n");
-        out.flush();
+    /**
+     * Ends the input of a connection whose one-shot request has been answered, which wakes
+     * its thread from reading
+     */
+    private static void stopReading(Socket clientSocket, AtomicBoolean inputStopped) {
+        inputStopped.set(true);
+        try {
+            clientSocket.shutdownInput();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+    
+    /**
+     * Scrapes an admitted request, unless it waited too long to run and is answered busy
+     */
+    private ScrapeResult execute(ScrapeRequest request, AdmissionController.Ticket ticket, Deadline deadline,
+                                 Output out, ScrapeCodec codec) {
+        if (!ticket.start()) {
+            return admission.busy(request == null ? null : request.id);
+        }
+        try {
+            return scrapeService.execute(request, line -> sendResponse(out, codec, line), deadline);
+        } finally {
+            // A request cancelled early says nothing about how long requests take
+            if (deadline.isCancelled()) {
+                ticket.cancel();
+            } else {
+                ticket.finish();
+            }
+        }
+    }
+
+    /**
+     * Encodes and writes one line, recording the time the write took and the bytes sent in {@link Metrics}
+     */
+    private void sendResponse(Output out, ScrapeCodec codec, ScrapeResult result) throws IOException {
+        List<ByteBuffer> data = codec.encode(result);
+        try {
+            out.lock.lock();
+            try {
+                long start = System.nanoTime();
+                long bytes = 0;
+                for (ByteBuffer buffer : data) {
+                    bytes += buffer.remaining();
+                    out.write(buffer);
+                }
+                metrics.recordSince(Metrics.Phase.WRITE, start);
+                metrics.add(Metrics.Counter.BYTES_OUT, bytes);
+            } finally {
+                out.lock.unlock();
+            }
+        } catch (IOException e) {
+            metrics.increment(Metrics.Counter.WRITE_ERRORS);
+            throw e;
+        } finally {
+            codec.release(data);
+        }
+    }
+
+    /**
+     * The sending side of a connection, whose lines are written whole under its lock.
+     * It holds no monitor while writing, unlike {@code synchronized} or the stream adapter of
+     * {@link Channels}, so a virtual thread blocked on a slow client does not pin its carrier.
+     */
+    private static final class Output {
+        private static final int CHUNK_SIZE = 8192;
+
+        final ReentrantLock lock = new ReentrantLock();
+        private final OutputStream stream;
+        // Pooled buffers are direct, so their bytes go out through this array; guarded by the lock
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+
+        Output(Socket socket) throws IOException {
+            this.stream = socket.getOutputStream();
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                int length = Math.min(buffer.remaining(), chunk.length);
+                buffer.get(chunk, 0, length);
+                stream.write(chunk, 0, length);
+            }
+        }
     }
 }
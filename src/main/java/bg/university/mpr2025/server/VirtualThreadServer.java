@@ -0,0 +1,34 @@
+package bg.university.mpr2025.server;
+
+import bg.university.mpr2025.utils.VirtualThreads;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Blocking server that gives every connection its own virtual thread.
+ * Request handling is the same simple blocking code as {@link ThreadPoolServer},
+ * but a slow upstream site only parks its own virtual thread instead of occupying
+ * one of a fixed number of platform threads, so tens of thousands of slow scrapes
+ * can be in flight at once.
+ */
+public class VirtualThreadServer extends ThreadPoolServer {
+
+    public VirtualThreadServer(int port) {
+        super(port, 0);
+    }
+
+    @Override
+    protected String name() {
+        return VirtualThreads.isAvailable() ? "VirtualThread Server" : "VirtualThread Server (platform thread fallback)";
+    }
+
+    @Override
+    protected ExecutorService createExecutor() {
+        return VirtualThreads.newThreadPerTaskExecutor("connection");
+    }
+
+    @Override
+    protected ExecutorService createRequestExecutor() {
+        return VirtualThreads.newThreadPerTaskExecutor("request");
+    }
+}
@@ -0,0 +1,128 @@
+package bg.university.mpr2025.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct byte buffers in power-of-two size classes.
+ * Direct buffers are expensive to allocate and free, so connections borrow them
+ * and hand them back when they close. The pool keeps at most a fixed number of
+ * bytes idle; buffers returned beyond that are simply left to the garbage collector.
+ */
+public final class BufferPool {
+    private static final BufferPool SHARED = new BufferPool(4 * 1024, 1024 * 1024, 64L * 1024 * 1024);
+
+    private final int minSize;
+    private final int maxSize;
+    private final long maxIdleBytes;
+    // One free list per size class: minSize, 2 * minSize, ... maxSize
+    private final List<Queue<ByteBuffer>> free;
+    private final AtomicLong idleBytes = new AtomicLong();
+
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    /**
+     * @param minSize Smallest buffer handed out, rounded up to a power of two
+     * @param maxSize Largest buffer handed out
+     * @param maxIdleBytes Upper bound on the bytes kept in the free lists
+     */
+    public BufferPool(int minSize, int maxSize, long maxIdleBytes) {
+        this.minSize = roundUp(minSize);
+        this.maxSize = Math.max(this.minSize, roundUp(maxSize));
+        this.maxIdleBytes = maxIdleBytes;
+        int sizeClasses = sizeClass(this.maxSize) + 1;
+        this.free = new ArrayList<>(sizeClasses);
+        for (int i = 0; i < sizeClasses; i++) {
+            free.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Borrows a cleared buffer of at least the given capacity
+     * @throws IllegalArgumentException If the capacity is above the pool's maximum size
+     */
+    public ByteBuffer acquire(int capacity) {
+        if (capacity > maxSize) {
+            throw new IllegalArgumentException("Buffer of " + capacity + " bytes exceeds the limit of " + maxSize);
+        }
+        int sizeClass = sizeClass(Math.max(capacity, minSize));
+        ByteBuffer buffer = free.get(sizeClass).poll();
+        if (buffer != null) {
+            idleBytes.addAndGet(-buffer.capacity());
+            reuses.incrementAndGet();
+            return buffer.clear();
+        }
+        allocations.incrementAndGet();
+        return ByteBuffer.allocateDirect(minSize << sizeClass);
+    }
+
+    /**
+     * Replaces a buffer in write mode with one twice as large holding the same bytes,
+     * and returns the old one to the pool
+     */
+    public ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer larger = acquire(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        release(buffer);
+        return larger;
+    }
+
+    /**
+     * Gives a buffer back; it must not be used by the caller afterwards
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || Integer.bitCount(buffer.capacity()) != 1
+                || buffer.capacity() < minSize || buffer.capacity() > maxSize) {
+            return; // not one of ours
+        }
+        if (idleBytes.addAndGet(buffer.capacity()) > maxIdleBytes) {
+            idleBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+        free.get(sizeClass(buffer.capacity())).add(buffer);
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    public long getIdleBytes() {
+        return idleBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{allocations=" + getAllocations() + ", reuses=" + getReuses()
+                + ", idleBytes=" + getIdleBytes() + "}";
+    }
+
+    private int sizeClass(int capacity) {
+        return Integer.numberOfTrailingZeros(roundUp(capacity) / minSize);
+    }
+
+    private static int roundUp(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+}
@@ -0,0 +1,134 @@
+package bg.university.mpr2025.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in a fixed amount of memory.
+ * Durations are kept in microseconds in log-linear buckets: every power of two is split into
+ * 32 equal buckets, so a percentile is within about 3% of the true value from 1 microsecond
+ * up to the longest duration recorded, which is capped at about 19 hours. Recording is a few
+ * atomic increments and never allocates, so it can sit on every request's path.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final long MAX_MICROS = (1L << 36) - 1;
+    private static final int BUCKETS = indexOf(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a duration; negative ones count as zero
+     */
+    public void record(long nanos) {
+        long micros = Math.min(MAX_MICROS, Math.max(0, nanos / 1000));
+        counts.incrementAndGet(indexOf(micros));
+        count.increment();
+        totalMicros.add(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Copies the counts. Durations recorded while it is taken may or may not be included.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, totalMicros.sum(), maxMicros.get());
+    }
+
+    /**
+     * Below 2 * SUB_COUNT every microsecond has its own bucket; above, every power of two
+     * has SUB_COUNT buckets
+     */
+    private static int indexOf(long micros) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros | SUB_COUNT) - SUB_BITS;
+        return (magnitude << SUB_BITS) + (int) (micros >>> magnitude);
+    }
+
+    /**
+     * The largest duration, in microseconds, that falls into the given bucket
+     */
+    private static long highestOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int magnitude = (index >> SUB_BITS) - 1;
+        long sub = index - ((long) magnitude << SUB_BITS);
+        return ((sub + 1) << magnitude) - 1;
+    }
+
+    /**
+     * The counts at one moment, to read percentiles from
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+
+        Snapshot(long[] counts, long count, long totalMicros, long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMs() {
+            return count == 0 ? 0 : totalMicros / 1e3 / count;
+        }
+
+        public double getMaxMs() {
+            return maxMicros / 1e3;
+        }
+
+        /**
+         * The duration that the given share of the recorded durations did not exceed
+         * @param percentile Between 0 and 100, e.g. 99.9
+         * @return The duration in milliseconds, or 0 if nothing was recorded
+         */
+        public double percentileMs(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestOf(i), maxMicros) / 1e3;
+                }
+            }
+            return getMaxMs();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+                    count, getMeanMs(), percentileMs(50), percentileMs(90), percentileMs(99), percentileMs(99.9),
+                    getMaxMs());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package bg.university.mpr2025.utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of longs in a single open-addressing array, without boxing.
+ * Each value takes 8 bytes of a table that is kept at most half full, so a million
+ * values need 16 MB where a {@code HashSet<Long>} needs several times that.
+ * Values are scrambled once more before picking a slot, so plain counters spread as well
+ * as hashes do. Zero marks free slots and is tracked separately.
+ * Not thread-safe.
+ */
+public final class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] table;
+    private int size;
+    private boolean hasZero;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expected Number of values the set holds before it first grows
+     */
+    public LongHashSet(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expected * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        table = new long[capacity];
+    }
+
+    /**
+     * @return True if the value was not in the set yet
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            boolean added = !hasZero;
+            hasZero = true;
+            if (added) {
+                size++;
+            }
+            return added;
+        }
+        if ((size + 1) * 2L > table.length) {
+            grow();
+        }
+        if (!insert(table, value)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) {
+            return hasZero;
+        }
+        int mask = table.length - 1;
+        for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+            long current = table[i];
+            if (current == value) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+        hasZero = false;
+    }
+
+    /**
+     * Approximate heap taken by the table, in bytes
+     */
+    public long sizeBytes() {
+        return table.length * 8L;
+    }
+
+    private boolean insert(long[] into, long value) {
+        int mask = into.length - 1;
+        for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+            long current = into[i];
+            if (current == value) {
+                return false;
+            }
+            if (current == 0) {
+                into[i] = value;
+                return true;
+            }
+        }
+    }
+
+    private void grow() {
+        if (table.length >= (1 << 30)) {
+            throw new IllegalStateException("LongHashSet is full");
+        }
+        long[] larger = new long[table.length * 2];
+        for (long value : table) {
+            if (value != 0) {
+                insert(larger, value);
+            }
+        }
+        table = larger;
+    }
+
+    private static int slot(long value, int mask) {
+        // Fibonacci hashing spreads values that differ only in their high bits
+        return (int) ((value * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,105 @@
+package bg.university.mpr2025.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timings and counters of the request path, shared by every server engine.
+ * Each stage records how long it took into the {@link LatencyHistogram} of its {@link Phase},
+ * and the servers count the bytes they move and the requests that fail. Recording takes no
+ * locks and allocates nothing.
+ */
+public final class Metrics {
+    private static final Metrics SHARED = new Metrics();
+
+    /**
+     * The stages a request goes through, in order
+     */
+    public enum Phase {
+        // From arrival until a thread starts on the request
+        QUEUE("queue"),
+        // From sending the request to the origin until the whole page has arrived
+        FETCH("fetch"),
+        PARSE("parse"),
+        CLEAN("clean"),
+        // Selecting the content elements and turning them into rows
+        EXTRACT("extract"),
+        // Encoding one result or streamed line as JSON
+        SERIALIZE("serialize"),
+        // Handing encoded lines to the client's socket
+        WRITE("write");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public enum Counter {
+        // Bytes received from clients
+        BYTES_IN("bytesIn"),
+        // Bytes sent to clients
+        BYTES_OUT("bytesOut"),
+        // Bytes of pages received from origins
+        BYTES_FETCHED("bytesFetched"),
+        // Requests answered with an error
+        ERRORS("errors"),
+        TIMEOUTS("timeouts"),
+        CANCELLED("cancelled"),
+        // Answers that could not be sent because the client had gone
+        WRITE_ERRORS("writeErrors");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+    public Metrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    public LatencyHistogram histogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Records the time elapsed in the phase since the given {@link System#nanoTime()}
+     */
+    public void recordSince(Phase phase, long startNanos) {
+        histograms[phase.ordinal()].recordSince(startNanos);
+    }
+
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+}
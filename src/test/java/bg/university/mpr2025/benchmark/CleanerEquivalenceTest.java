@@ -0,0 +1,28 @@
+package bg.university.mpr2025.benchmark;
+
+import bg.university.mpr2025.scrapper.DocumentCleaner;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The single-pass DocumentCleaner must leave every saved page exactly as the LegacyCleaner does
+ */
+class CleanerEquivalenceTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"small", "medium", "large"})
+    void cleansLikeTheLegacyCleaner(String fixture) {
+        Document page = Jsoup.parse(Fixtures.load(fixture), Fixtures.BASE_URL);
+
+        Document expected = page.clone();
+        LegacyCleaner.clean(expected);
+        Document actual = page.clone();
+        DocumentCleaner.standard().clean(actual);
+
+        assertEquals(expected.outerHtml(), actual.outerHtml(), "Cleaned " + fixture + " page");
+    }
+}
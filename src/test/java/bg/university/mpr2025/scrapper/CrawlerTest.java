@@ -0,0 +1,101 @@
+package bg.university.mpr2025.scrapper;
+
+import bg.university.mpr2025.benchmark.StubOrigin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Crawls a generated site of linked pages on a local stub origin
+ */
+class CrawlerTest {
+    private static final int PAGES = 31;
+
+    private StubOrigin origin;
+    private String seed;
+    private HttpFetcher fetcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        origin = new StubOrigin(0);
+        // Every page also links home and to 3 random pages, so most URLs are found several times
+        seed = origin.url(origin.linkedSite("/site/", PAGES, 3, 42));
+        fetcher = new HttpFetcher(HttpClient.newHttpClient(), new FetchScheduler(64, 8, 0, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        origin.close();
+    }
+
+    @Test
+    void visitsEveryReachablePageOnce() throws Exception {
+        List<Crawler.Page> pages = crawl(0, 10, 100);
+
+        assertEquals(PAGES, pages.size());
+        assertEquals(PAGES, distinctUrls(pages).size());
+        assertEquals(PAGES, origin.requestCount(), "Requests to the origin");
+        for (Crawler.Page page : pages) {
+            assertNull(page.getError(), page.getUrl());
+            assertTrue(page.getRows().size() > 0, page.getUrl());
+        }
+    }
+
+    @Test
+    void stopsAtThePageBudget() throws Exception {
+        List<Crawler.Page> pages = crawl(0, 10, 10);
+
+        assertEquals(10, pages.size());
+        assertEquals(10, distinctUrls(pages).size());
+        assertEquals(10, origin.requestCount(), "Requests to the origin");
+    }
+
+    @Test
+    void followsLinksUpToTheDepth() throws Exception {
+        List<Crawler.Page> pages = crawl(0, 1, 100);
+
+        // The seed links to pages 1 and 2, itself and 3 random pages
+        assertTrue(pages.size() >= 3 && pages.size() <= 6, "Pages crawled: " + pages.size());
+        for (Crawler.Page page : pages) {
+            assertTrue(page.getDepth() <= 1, page.getUrl());
+        }
+    }
+
+    @Test
+    void spacesFetchStartsOnAHost() throws Exception {
+        long delayMs = 100;
+        long start = System.nanoTime();
+        List<Crawler.Page> pages = crawl(delayMs, 10, 5);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(5, pages.size());
+        assertTrue(elapsedMs >= 4 * delayMs, "5 pages crawled in " + elapsedMs + " ms");
+    }
+
+    private List<Crawler.Page> crawl(long hostDelayMs, int maxDepth, int maxPages) throws Exception {
+        Crawler crawler = new Crawler(fetcher, new ParallelScraper(fetcher), new FetchLimiter(64, 8),
+                ScraperExecutor.pool(), hostDelayMs);
+        List<Crawler.Page> pages = new ArrayList<>();
+        int crawled = crawler.crawl(seed, ExtractionProfile.standard(), maxDepth, maxPages, 0, pages::add);
+        assertEquals(pages.size(), crawled);
+        return pages;
+    }
+
+    private static Set<String> distinctUrls(List<Crawler.Page> pages) {
+        Set<String> urls = new HashSet<>();
+        for (Crawler.Page page : pages) {
+            urls.add(page.getUrl());
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,73 @@
+package bg.university.mpr2025.scrapper;
+
+import bg.university.mpr2025.benchmark.StubOrigin;
+import bg.university.mpr2025.scrapper.HttpFetcher.FetchedPage;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HttpFetcherTest {
+
+    @Test
+    void fetchesPastTheirDeadlineGiveTheirSlotsBack() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(10, 2, 0, 0);
+        HttpFetcher fetcher = new HttpFetcher(HttpClient.newHttpClient(), scheduler);
+        try (StubOrigin origin = new StubOrigin(500)) {
+            origin.page("/slow", StubOrigin.newsPage(1));
+
+            List<CompletableFuture<FetchedPage>> fetches = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                fetches.add(fetcher.fetchAsync(origin.url("/slow"), Deadline.after(100)));
+            }
+            for (CompletableFuture<FetchedPage> fetch : fetches) {
+                ExecutionException e = assertThrows(ExecutionException.class, fetch::get);
+                assertInstanceOf(DeadlineExceededException.class, e.getCause());
+            }
+
+            assertDrained(scheduler);
+            // The host takes fetches again
+            assertEquals(200, fetcher.fetchAsync(origin.url("/slow")).get().getStatusCode());
+            assertDrained(scheduler);
+        }
+    }
+
+    @Test
+    void cancelledFetchesGiveTheirSlotsBack() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(10, 2, 0, 0);
+        HttpFetcher fetcher = new HttpFetcher(HttpClient.newHttpClient(), scheduler);
+        try (StubOrigin origin = new StubOrigin(500)) {
+            origin.page("/slow", StubOrigin.newsPage(1));
+
+            List<CompletableFuture<FetchedPage>> fetches = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                fetches.add(fetcher.fetchAsync(origin.url("/slow")));
+            }
+            Thread.sleep(100);
+            for (CompletableFuture<FetchedPage> fetch : fetches) {
+                fetch.cancel(true);
+            }
+
+            assertDrained(scheduler);
+        }
+    }
+
+    /**
+     * Waits briefly for releases made on other threads, then checks nothing is left in flight
+     */
+    private static void assertDrained(FetchScheduler scheduler) throws InterruptedException {
+        for (int attempt = 0; attempt < 50 && scheduler.getInFlight() > 0; attempt++) {
+            Thread.sleep(20);
+        }
+        FetchScheduler.Stats stats = scheduler.stats();
+        assertEquals(0, stats.getInFlight(), stats.toString());
+        assertEquals(0, stats.getQueued(), stats.toString());
+    }
+}
@@ -0,0 +1,113 @@
+package bg.university.mpr2025.scrapper;
+
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelExtractorTest {
+    // Long enough per element that the work is cut into many leaves
+    private static final long ELEMENT_NANOS = 20_000;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger mostRunning = new AtomicInteger();
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 4, 8})
+    void usesAtMostTheRequestedThreads(int threads) throws Exception {
+        List<Element> elements = elements(400);
+        ParallelExtractor extractor = new ParallelExtractor(pool);
+        Thread caller = Thread.currentThread();
+
+        List<String> rows = new ArrayList<>();
+        extractor.extract(elements, element -> {
+            if (Thread.currentThread() != caller) {
+                workers.add(Thread.currentThread());
+            }
+            return slowRow(element);
+        }, threads, 0, rows::add);
+
+        assertEquals(expectedRows(400), rows);
+        assertTrue(mostRunning.get() <= Math.min(threads, pool.getParallelism()),
+                "Threads at once: " + mostRunning.get());
+        assertTrue(!workers.isEmpty() && workers.size() <= threads, "Pool threads used: " + workers.size());
+    }
+
+    @Test
+    void oneThreadStaysOnTheCaller() throws Exception {
+        List<Element> elements = elements(400);
+        ParallelExtractor extractor = new ParallelExtractor(pool);
+        Thread caller = Thread.currentThread();
+        AtomicInteger elsewhere = new AtomicInteger();
+
+        List<String> rows = new ArrayList<>();
+        extractor.extract(elements, element -> {
+            if (Thread.currentThread() != caller) {
+                elsewhere.incrementAndGet();
+            }
+            return element.text();
+        }, 1, 0, rows::add);
+
+        assertEquals(expectedRows(400), rows);
+        assertEquals(0, elsewhere.get());
+    }
+
+    @Test
+    void stopsAtTheRowLimitInElementOrder() throws Exception {
+        List<Element> elements = elements(400);
+        ParallelExtractor extractor = new ParallelExtractor(pool);
+
+        List<String> rows = new ArrayList<>();
+        int count = extractor.extract(elements, this::slowRow, 4, 150, rows::add);
+
+        assertEquals(150, count);
+        assertEquals(expectedRows(400).subList(0, 150), rows);
+    }
+
+    private String slowRow(Element element) {
+        mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            long end = System.nanoTime() + ELEMENT_NANOS;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+            return element.text();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private static List<Element> elements(int count) {
+        List<Element> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            elements.add(new Element("p").text("Row " + i));
+        }
+        return elements;
+    }
+
+    private static List<String> expectedRows(int count) {
+        List<String> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add("Row " + i);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,164 @@
+package bg.university.mpr2025.server;
+
+import bg.university.mpr2025.benchmark.StubOrigin;
+import bg.university.mpr2025.models.ScrapeResult;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * How the concurrent engines answer the requests of one connection, talked to over a raw socket
+ */
+class ScrapeServerTest {
+    private final Gson gson = new Gson();
+
+    private StubOrigin origin;
+    private ScrapeServer server;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        origin = new StubOrigin(0);
+        origin.page("/fast", StubOrigin.newsPage(5));
+        origin.page("/slow", StubOrigin.newsPage(5));
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+        origin.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"threadpool", "selector", "virtual"})
+    void oneShotRequestIsAnsweredAfterTheClientHalfCloses(String engine) throws Exception {
+        start(engine);
+        origin.setLatencyMs(300);
+        String slow = origin.url("/slow?engine=" + engine);
+
+        Map<String, ScrapeResult> results = exchange(true, "{\"id\":\"one\",\"url\":\"" + slow + "\",\"rows\":3}");
+
+        assertEquals("success", results.get("one").getStatus());
+        assertEquals(3, results.get("one").getResults().size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"threadpool", "selector", "virtual"})
+    void oneShotRequestDoesNotCancelEarlierKeepAliveRequests(String engine) throws Exception {
+        start(engine);
+        String fast = origin.url("/fast?engine=" + engine);
+        String slow = origin.url("/slow?engine=" + engine);
+        // Cached, so the one-shot request is answered long before the keep-alive one
+        assertEquals("success", exchange(false, "{\"url\":\"" + fast + "\",\"rows\":1}").get(null).getStatus());
+        origin.setLatencyMs(500);
+
+        Map<String, ScrapeResult> results = exchange(false,
+                "{\"id\":\"slow\",\"url\":\"" + slow + "\",\"rows\":1,\"keepAlive\":true}",
+                "{\"id\":\"fast\",\"url\":\"" + fast + "\",\"rows\":1}");
+
+        assertTrue(results.containsKey("slow"), "Answers: " + results.keySet());
+        assertEquals("success", results.get("fast").getStatus());
+        assertEquals("success", results.get("slow").getStatus());
+        assertFalse(results.get("slow").getResults().isEmpty());
+    }
+
+    @Test
+    void selectorServerClosesItsConnectionsWhenStopped() throws Exception {
+        start("selector");
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5_000);
+            // Idle keep-alive connection, registered with an event loop
+            socket.getOutputStream().write(("{\"stats\":true,\"keepAlive\":true}\n").getBytes(StandardCharsets.UTF_8));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertNotNull(in.readLine());
+
+            server.stop();
+            server.stop();
+
+            assertNull(in.readLine());
+        }
+    }
+
+    private void start(String engine) throws InterruptedException {
+        switch (engine) {
+            case "threadpool":
+                server = new ThreadPoolServer(port, 4);
+                break;
+            case "selector":
+                server = new SelectorServer(port, 4);
+                break;
+            case "virtual":
+                server = new VirtualThreadServer(port);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+        Thread thread = new Thread(server::start, "test-server");
+        thread.setDaemon(true);
+        thread.start();
+        awaitListening();
+    }
+
+    /**
+     * Sends the request lines on one connection and reads answers until the server closes it
+     * @param halfClose Close the sending side once the requests are sent
+     * @return The answers by id
+     */
+    private Map<String, ScrapeResult> exchange(boolean halfClose, String... requests) throws IOException {
+        Map<String, ScrapeResult> results = new HashMap<>();
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(10_000);
+            OutputStream out = socket.getOutputStream();
+            for (String request : requests) {
+                out.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            if (halfClose) {
+                socket.shutdownOutput();
+            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                ScrapeResult result = gson.fromJson(line, ScrapeResult.class);
+                results.put(result.getId(), result);
+            }
+        }
+        return results;
+    }
+
+    private void awaitListening() throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+}